@@ -0,0 +1,288 @@
+package de.intranda.goobi.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+import lombok.Getter;
+
+/**
+ * Streams files into a single ZIP or TAR archive. Every file is read once and written directly into the archive, no intermediate directory
+ * is needed. Files that are already compressed, e.g. JPEG or JPEG 2000 images, are stored in ZIP archives without compressing them again,
+ * they are read twice because the CRC of a stored entry has to be known before its data.
+ * TAR archives are written in the POSIX ustar format, long names and large files are described by PAX headers.
+ */
+public class ArchiveWriter implements Closeable {
+
+    private static final Set<String> COMPRESSED_EXTENSIONS =
+            new HashSet<>(Arrays.asList("jpg", "jpeg", "jp2", "jpx", "png", "gif", "webp", "pdf", "zip", "gz", "mp3", "mp4", "epub"));
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final int BLOCK_SIZE = 512;
+
+    // largest size that fits into the octal size field of a ustar header
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    // null if a TAR archive is written
+    private final ZipOutputStream zip;
+
+    // null if a ZIP archive is written
+    private final OutputStream tar;
+
+    private final Set<String> directories = new HashSet<>();
+
+    @Getter
+    private int writtenFiles;
+
+    // bytes of all files added to the archive, before any compression
+    @Getter
+    private long writtenBytes;
+
+    /**
+     * create a new archive writer
+     *
+     * @param out stream the archive is written to
+     * @param packaging type of the archive, must not be NONE
+     * @throws IOException
+     */
+    public ArchiveWriter(OutputStream out, Packaging packaging) throws IOException {
+        switch (packaging) {
+            case ZIP:
+                zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+                tar = null;
+                break;
+            case TAR:
+                zip = null;
+                tar = out;
+                break;
+            case TAR_GZ:
+                zip = null;
+                tar = new GZIPOutputStream(out, BUFFER_SIZE);
+                break;
+            default:
+                throw new IllegalArgumentException("No archive packaging: " + packaging);
+        }
+    }
+
+    /**
+     * add a directory entry, its parent directories are added as well
+     *
+     * @param name path of the directory inside of the archive, separated by slashes
+     * @throws IOException
+     */
+    public void addDirectory(String name) throws IOException {
+        String directory = name.endsWith("/") ? name : name + "/";
+        if (directory.equals("/") || !directories.add(directory)) {
+            return;
+        }
+        int parentEnd = directory.lastIndexOf('/', directory.length() - 2);
+        if (parentEnd > 0) {
+            addDirectory(directory.substring(0, parentEnd + 1));
+        }
+        long lastModified = System.currentTimeMillis();
+        if (zip != null) {
+            ZipEntry entry = new ZipEntry(directory);
+            entry.setTime(lastModified);
+            zip.putNextEntry(entry);
+            zip.closeEntry();
+        } else {
+            writeTarHeader(directory, 0, lastModified, true);
+        }
+    }
+
+    /**
+     * add a file, its parent directories are added as well
+     *
+     * @param name path of the file inside of the archive, separated by slashes
+     * @param file Path of the file that is added
+     * @throws IOException
+     */
+    public void addFile(String name, Path file) throws IOException {
+        int parentEnd = name.lastIndexOf('/');
+        if (parentEnd > 0) {
+            addDirectory(name.substring(0, parentEnd + 1));
+        }
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        long size = storage.getFileSize(file);
+        long lastModified = storage.getLastModifiedDate(file);
+        OutputStream out;
+        if (zip != null) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(lastModified);
+            if (isCompressed(name)) {
+                // compressing already compressed files again only costs time, a stored entry needs its size and CRC in the local header
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(getCrc(storage, file, size));
+            } else {
+                entry.setMethod(ZipEntry.DEFLATED);
+            }
+            zip.putNextEntry(entry);
+            out = zip;
+        } else {
+            writeTarHeader(name, size, lastModified, false);
+            out = tar;
+        }
+
+        long copied = 0;
+        try (InputStream in = storage.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while (copied < size && (read = in.read(buffer, 0, (int) Math.min(buffer.length, size - copied))) != -1) {
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+        }
+        if (copied != size) {
+            throw new IOException("File " + file + " changed while it was added to the archive");
+        }
+        writtenFiles++;
+        writtenBytes += size;
+
+        if (zip != null) {
+            zip.closeEntry();
+        } else {
+            writePadding(size);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+        } else {
+            // end of archive: two empty blocks
+            tar.write(new byte[2 * BLOCK_SIZE]);
+            tar.close();
+        }
+    }
+
+    private static long getCrc(StorageProviderInterface storage, Path file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        long read = 0;
+        try (InputStream in = storage.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while (read < size && (length = in.read(buffer, 0, (int) Math.min(buffer.length, size - read))) != -1) {
+                crc.update(buffer, 0, length);
+                read += length;
+            }
+        }
+        if (read != size) {
+            throw new IOException("File " + file + " changed while it was added to the archive");
+        }
+        return crc.getValue();
+    }
+
+    private static boolean isCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private void writeTarHeader(String name, long size, long lastModified, boolean directory) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String prefix = "";
+        String shortName = name;
+        boolean needsPax = size > MAX_USTAR_SIZE;
+        if (nameBytes.length > 100) {
+            // try to split the name into the prefix and name fields of the ustar header
+            int split = name.lastIndexOf('/', name.length() - 2);
+            while (split > 0 && name.substring(0, split).getBytes(StandardCharsets.UTF_8).length > 155) {
+                split = name.lastIndexOf('/', split - 1);
+            }
+            if (split > 0 && name.substring(split + 1).getBytes(StandardCharsets.UTF_8).length <= 100) {
+                prefix = name.substring(0, split);
+                shortName = name.substring(split + 1);
+            } else {
+                needsPax = true;
+                shortName = name.substring(Math.max(0, name.length() - 99));
+            }
+        }
+        if (needsPax) {
+            StringBuilder records = new StringBuilder();
+            records.append(createPaxRecord("path", name));
+            if (size > MAX_USTAR_SIZE) {
+                records.append(createPaxRecord("size", String.valueOf(size)));
+            }
+            byte[] paxData = records.toString().getBytes(StandardCharsets.UTF_8);
+            tar.write(createTarHeader("PaxHeader", "", paxData.length, lastModified, (byte) 'x'));
+            tar.write(paxData);
+            writePadding(paxData.length);
+        }
+        tar.write(createTarHeader(shortName, prefix, Math.min(size, MAX_USTAR_SIZE), lastModified, directory ? (byte) '5' : (byte) '0'));
+    }
+
+    private static byte[] createTarHeader(String name, String prefix, long size, long lastModified, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, type == '5' ? 0755 : 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, lastModified / 1000);
+        // the checksum is computed with spaces in its own field
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+        putString(header, 345, 155, prefix);
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        // six octal digits, NUL and space, as required by POSIX
+        putOctal(header, 148, 7, checksum);
+        header[154] = 0;
+        header[155] = ' ';
+        return header;
+    }
+
+    private static String createPaxRecord(String key, String value) {
+        // the length of a record includes the length field itself
+        String content = " " + key + "=" + value + "\n";
+        int contentLength = content.getBytes(StandardCharsets.UTF_8).length;
+        int length = contentLength + String.valueOf(contentLength).length();
+        if (String.valueOf(length).length() != String.valueOf(contentLength).length()) {
+            length = contentLength + String.valueOf(length).length();
+        }
+        return length + content;
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        // zero padded octal number, terminated by NUL
+        String octal = Long.toOctalString(value);
+        StringBuilder sb = new StringBuilder();
+        for (int i = octal.length(); i < length - 1; i++) {
+            sb.append('0');
+        }
+        sb.append(octal);
+        putString(header, offset, length - 1, sb.toString());
+    }
+
+    private void writePadding(long size) throws IOException {
+        int remainder = (int) (size % BLOCK_SIZE);
+        if (remainder > 0) {
+            tar.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+}
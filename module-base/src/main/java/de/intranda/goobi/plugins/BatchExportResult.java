@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Result of the export of a single process within a batch export.
+ */
+public class BatchExportResult {
+
+    @Getter
+    private final int processId;
+
+    // null if the process does not exist
+    @Getter
+    private final String processTitle;
+
+    @Getter
+    private final boolean success;
+
+    @Getter
+    private final List<String> problems;
+
+    // bytes written into the destinations, files that were linked or skipped by an incremental export are not counted
+    @Getter
+    private final long copiedBytes;
+
+    @Getter
+    private final long durationMillis;
+
+    /**
+     * create the result of an export
+     *
+     * @param processId id of the process
+     * @param processTitle title of the process, null if the process does not exist
+     * @param success true if the process was exported successfully
+     * @param problems all problems of the export
+     * @param copiedBytes number of bytes written into the destinations
+     * @param durationMillis duration of the export in milliseconds
+     */
+    public BatchExportResult(int processId, String processTitle, boolean success, List<String> problems, long copiedBytes, long durationMillis) {
+        this.processId = processId;
+        this.processTitle = processTitle;
+        this.success = success;
+        this.problems = Collections.unmodifiableList(problems);
+        this.copiedBytes = copiedBytes;
+        this.durationMillis = durationMillis;
+    }
+}
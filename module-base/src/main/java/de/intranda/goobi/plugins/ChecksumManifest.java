@@ -0,0 +1,269 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * BagIt-style checksum manifest of one export destination. Each line contains the checksum of an exported file and its path relative to the
+ * destination, e.g. manifest-sha256.txt. The checksums are recorded while the files are copied, so that no file has to be read twice.
+ */
+@Log4j2
+public class ChecksumManifest {
+
+    /**
+     * supported checksum algorithms
+     */
+    public enum Algorithm {
+        MD5("MD5", "md5"),
+        SHA256("SHA-256", "sha256");
+
+        // name of the algorithm for MessageDigest
+        @Getter
+        private final String digestName;
+
+        // name of the algorithm in the BagIt manifest file name
+        @Getter
+        private final String bagItName;
+
+        Algorithm(String digestName, String bagItName) {
+            this.digestName = digestName;
+            this.bagItName = bagItName;
+        }
+
+        /**
+         * get the Algorithm by its configured name
+         *
+         * @param name configured value, e.g. md5 or sha256, case insensitive
+         * @return the matching Algorithm, null if the name is empty or unknown
+         */
+        public static Algorithm getByName(String name) {
+            if (name != null) {
+                String normalized = name.trim().replace("-", "");
+                for (Algorithm algorithm : values()) {
+                    if (algorithm.bagItName.equalsIgnoreCase(normalized)) {
+                        return algorithm;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * create a new MessageDigest for this algorithm
+         *
+         * @return a new MessageDigest
+         */
+        public MessageDigest createDigest() {
+            try {
+                return MessageDigest.getInstance(digestName);
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform has to support MD5 and SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Getter
+    private final Path destination;
+
+    @Getter
+    private final Algorithm algorithm;
+
+    // checksums of the previous export, used for files that are skipped by an incremental export
+    private final Map<String, String> previousEntries = new ConcurrentHashMap<>();
+
+    // checksums of the current export
+    private final Map<String, String> currentEntries = new ConcurrentHashMap<>();
+
+    // files that were written by the current export and can be verified
+    private final Set<String> writtenFiles = ConcurrentHashMap.newKeySet();
+
+    private ChecksumManifest(Path destination, Algorithm algorithm) {
+        this.destination = destination;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * create the manifest of a destination, the checksums of a previous export into the destination are loaded if they exist
+     *
+     * @param destination Path of the export destination
+     * @param algorithm checksum algorithm
+     * @return the manifest
+     */
+    public static ChecksumManifest load(Path destination, Algorithm algorithm) {
+        ChecksumManifest manifest = new ChecksumManifest(destination, algorithm);
+        Path manifestFile = manifest.getManifestFile();
+        if (!Files.isRegularFile(manifestFile)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\s+", 2);
+                if (parts.length == 2) {
+                    manifest.previousEntries.put(parts[1], parts[0]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Export Plugin - cannot read checksum manifest " + manifestFile, e);
+            manifest.previousEntries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * get the Path of the manifest file
+     *
+     * @return Path of the manifest file inside of the destination
+     */
+    public Path getManifestFile() {
+        return destination.resolve("manifest-" + algorithm.getBagItName() + ".txt");
+    }
+
+    /**
+     * check if a path is located inside of the destination of this manifest
+     *
+     * @param target Path to check
+     * @return true if the path is inside of the destination
+     */
+    public boolean contains(Path target) {
+        return target.startsWith(destination);
+    }
+
+    /**
+     * record the checksum of a file that was written by the current export
+     *
+     * @param target Path of the file inside of the destination
+     * @param checksum hex encoded checksum
+     */
+    public void put(Path target, String checksum) {
+        String key = getKey(target);
+        currentEntries.put(key, checksum);
+        writtenFiles.add(key);
+    }
+
+    /**
+     * keep the checksum of a file that was not written again, because it did not change since the previous export
+     *
+     * @param target Path of the file inside of the destination
+     * @return true if the previous checksum was kept, false if the previous export did not record a checksum of the file
+     */
+    public boolean keep(Path target) {
+        String key = getKey(target);
+        String checksum = previousEntries.get(key);
+        if (checksum == null) {
+            return false;
+        }
+        currentEntries.put(key, checksum);
+        return true;
+    }
+
+    /**
+     * forget a file that could not be copied
+     *
+     * @param target Path of the file inside of the destination
+     */
+    public void remove(Path target) {
+        String key = getKey(target);
+        currentEntries.remove(key);
+        writtenFiles.remove(key);
+    }
+
+    /**
+     * get all files that were written by the current export
+     *
+     * @return Paths of the written files
+     */
+    public List<Path> getWrittenFiles() {
+        List<Path> files = new ArrayList<>(writtenFiles.size());
+        for (String key : writtenFiles) {
+            files.add(destination.resolve(key));
+        }
+        return files;
+    }
+
+    /**
+     * check if the checksum of a written file matches the recorded checksum
+     *
+     * @param target Path of the file inside of the destination
+     * @return true if both checksums are equal
+     * @throws IOException
+     */
+    public boolean verify(Path target) throws IOException {
+        String expected = currentEntries.get(getKey(target));
+        return expected != null && expected.equals(createChecksum(target, algorithm));
+    }
+
+    /**
+     * write the manifest into the destination
+     *
+     * @throws IOException
+     */
+    public void write() throws IOException {
+        Path manifestFile = getManifestFile();
+        Path temporaryFile = destination.resolve(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(currentEntries).entrySet()) {
+                writer.write(entry.getValue() + "  " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Export Plugin - wrote " + currentEntries.size() + " checksums into " + manifestFile);
+    }
+
+    private String getKey(Path target) {
+        // BagIt manifests always use slashes
+        return destination.relativize(target).toString().replace('\\', '/');
+    }
+
+    /**
+     * read a file and create its checksum
+     *
+     * @param file Path of the file
+     * @param algorithm checksum algorithm
+     * @return the hex encoded checksum
+     * @throws IOException
+     */
+    public static String createChecksum(Path file, Algorithm algorithm) throws IOException {
+        MessageDigest digest = algorithm.createDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * encode a checksum as lower case hex string
+     *
+     * @param checksum bytes of the checksum
+     * @return the hex encoded checksum
+     */
+    public static String toHex(byte[] checksum) {
+        return HexFormat.of().formatHex(checksum);
+    }
+}
@@ -1,20 +1,31 @@
 package de.intranda.goobi.plugins;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.configuration.HierarchicalConfiguration;
+import javax.xml.stream.XMLStreamException;
+
 import org.apache.commons.configuration.SubnodeConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
@@ -25,28 +36,21 @@ import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.plugin.interfaces.IExportPlugin;
 import org.goobi.production.plugin.interfaces.IPlugin;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.Namespace;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.export.dms.ExportDms;
 import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
 import de.sub.goobi.helper.VariableReplacer;
-import de.sub.goobi.helper.XmlTools;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.ExportFileException;
 import de.sub.goobi.helper.exceptions.SwapException;
 import de.sub.goobi.helper.exceptions.UghHelperException;
 import de.sub.goobi.metadaten.MetadatenHelper;
 import de.sub.goobi.metadaten.MetadatenVerifizierung;
-import de.sub.goobi.persistence.managers.ProjectManager;
+import de.sub.goobi.persistence.managers.ProcessManager;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
@@ -69,42 +73,23 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
 
     private static final long serialVersionUID = 5498901552028238275L;
 
-    private static final Namespace METS_NAMESPACE = Namespace.getNamespace("mets", "http://www.loc.gov/METS/");
-    private static final String FOLDERS_PARENT_ELEMENT = "includeFolders";
-    private static final String GENERIC_FOLDER = "genericFolder";
-    private static final String MASTER_FOLDER = "master";
-    private static final String MEDIA_FOLDER = "media";
-    private static final String SOURCE_FOLDER = "source";
-    private static final String IMPORT_FOLDER = "import";
-    private static final String EXPORT_FOLDER = "export";
-    private static final String VALIDATION_FOLDER = "validation";
-    private static final String OCR_FOLDER = "ocr";
-    private static final String ITM_FOLDER = "itm";
-    private static final String ENABLED_PROPERTY = "/@enabled";
+    static final String GENERIC_FOLDER = "genericFolder";
+    static final String MASTER_FOLDER = "master";
+    static final String MEDIA_FOLDER = "media";
+    static final String SOURCE_FOLDER = "source";
+    static final String IMPORT_FOLDER = "import";
+    static final String EXPORT_FOLDER = "export";
+    static final String VALIDATION_FOLDER = "validation";
+    static final String OCR_FOLDER = "ocr";
+    static final String ITM_FOLDER = "itm";
+
+    private static final String PLUGIN_TITLE = "intranda_export_configurable";
 
     @Getter
     private PluginType type = PluginType.Export;
 
     @Getter
-    private String title = "intranda_export_configurable";
-
-    private boolean embedMarc;
-    private Project oldProject;
-
-    private SubnodeConfiguration foldersConfig;
-
-    private String[] imageFolders;
-    private boolean includeDerivate;
-    private boolean includeMaster;
-    private boolean includeOcr;
-    private boolean includeSource;
-    private boolean includeImport;
-    private boolean includeExport;
-    private boolean includeITM;
-    private boolean includeValidation;
-    private Integer processId;
-    private String processTitle;
-    String[] ocrSuffix;
+    private String title = PLUGIN_TITLE;
 
     /**
      * get the SubnodeConfiguration
@@ -113,7 +98,42 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
      * @return SubnodeConfiguration object
      */
     public SubnodeConfiguration getConfig(Process process) {
-        String projectName = process.getProjekt().getTitel();
+        return getConfig(process.getProjekt().getTitel());
+    }
+
+    /**
+     * get the compiled export profile of the project of a process. The profile is cached until the configuration file changes.
+     * 
+     * @param process Goobi process
+     * @return ExportProfile object
+     */
+    public ExportProfile getExportProfile(Process process) {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + title + ".xml");
+        return ExportProfileCache.getProfile(configFile, process.getProjekt().getTitel(),
+                projectName -> ExportProfile.compile(getConfig(projectName)));
+    }
+
+    /**
+     * get the limits of the export destinations. The limits are read again if the configuration file changes.
+     * 
+     * @return DestinationLimits object
+     */
+    private DestinationLimits getDestinationLimits() {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + title + ".xml");
+        return DestinationLimits.getInstance(configFile, () -> {
+            XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
+            xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+            return xmlConfig;
+        });
+    }
+
+    /**
+     * get the SubnodeConfiguration of a project
+     * 
+     * @param projectName title of the project
+     * @return SubnodeConfiguration object
+     */
+    private SubnodeConfiguration getConfig(String projectName) {
         XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
         xmlConfig.setExpressionEngine(new XPathExpressionEngine());
         xmlConfig.setReloadingStrategy(new FileChangedReloadingStrategy());
@@ -138,126 +158,763 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
             throws IOException, InterruptedException, WriteException, PreferencesException, DocStructHasNoTypeException,
             MetadataTypeNotAllowedException, ExportFileException, UghHelperException, SwapException, DAOException, TypeNotAllowedForParentException {
 
+        ExportQueue queue = getExportQueue();
+        if (queue != null) {
+            if (queue.enqueue(process.getId())) {
+                String message = "Export queued, it will run in the background.";
+                log.info("Export Plugin - " + process.getTitel() + ": " + message);
+                Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, message);
+                return true;
+            }
+            // backpressure: a full queue makes the caller export the process itself
+            log.warn("Export Plugin - export queue is full, exporting " + process.getTitel() + " directly");
+        }
+        return runExport(process);
+    }
+
+    /**
+     * start the exports that were still queued or running when Goobi stopped. Without this call, they are started by the first export that
+     * uses the queue. It is meant to be called once when Goobi starts, e.g. by a startup listener, and does nothing if the queue is disabled.
+     */
+    public static void recoverExportQueue() {
+        try {
+            getExportQueue();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Export Plugin - cannot recover the export queue", e);
+        }
+    }
+
+    /**
+     * get the queue of the asynchronous exports. It is created by the first call while the queue is enabled, which starts the exports of a
+     * previous run again. The settings are read again if the configuration file changes.
+     * 
+     * @return the ExportQueue, or null if the processes should be exported directly
+     * @throws IOException if the queue folder cannot be read
+     */
+    private static ExportQueue getExportQueue() throws IOException {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + PLUGIN_TITLE + ".xml");
+        Path folder = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), "export-queue");
+        return ExportQueue.getConfigured(configFile, folder, () -> {
+            XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(PLUGIN_TITLE);
+            xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+            return xmlConfig;
+        }, processId -> new ConfigurableExportPlugin().startQueuedExport(processId));
+    }
+
+    /**
+     * export a process of the queue and report the result into the process journal
+     * 
+     * @param processId id of the process
+     * @return true if the process was exported successfully
+     */
+    private boolean startQueuedExport(int processId) {
+        BatchExportResult result = startBatchExport(processId);
+        if (result.getProcessTitle() == null) {
+            return false;
+        }
+        if (result.isSuccess()) {
+            Helper.addMessageToProcessJournal(processId, LogType.INFO,
+                    "Queued export finished after " + result.getDurationMillis() / 1000 + " s, " + result.getCopiedBytes() + " bytes copied.");
+        } else {
+            Helper.addMessageToProcessJournal(processId, LogType.ERROR, "Queued export failed: " + String.join("; ", result.getProblems()));
+        }
+        return result.isSuccess();
+    }
+
+    /**
+     * export a process directly in the calling thread
+     * 
+     * @param process process that shall be exported
+     * @return true if the process is successfully exported, false otherwise
+     */
+    private boolean runExport(Process process) throws IOException, InterruptedException, WriteException, PreferencesException, SwapException,
+            DAOException, TypeNotAllowedForParentException {
+
         log.debug("================= Starting Configurable Export Plugin =================");
 
-        // read configuration
-        this.myPrefs = process.getRegelsatz().getPreferences();
-        SubnodeConfiguration config = getConfig(process);
+        // read configuration, all state of this export is kept in its own context
+        ExportContext context = new ExportContext(process, getExportProfile(process));
+        log.debug("Export Plugin - Process ID: " + context.getProcessId());
+        log.debug("Export Plugin - Process Title: " + context.getProcessTitle());
+        log.debug("Export Plugin - Original Project: " + context.getOriginalProject().getTitel());
+
+        try {
+            return runTrackedExport(context);
+        } finally {
+            synchronized (problems) {
+                problems.addAll(context.getProblems());
+            }
+        }
+    }
+
+    /**
+     * export the process of the context, publish its progress while it runs and report its metrics afterwards. Direct, batch and queued
+     * exports all go through here.
+     * 
+     * @param context context of the export
+     * @return true if the process is successfully exported, false otherwise
+     */
+    private boolean runTrackedExport(ExportContext context) throws IOException, InterruptedException, WriteException, PreferencesException,
+            SwapException, DAOException, TypeNotAllowedForParentException {
+        long start = System.nanoTime();
+        boolean success = false;
+        ExportProgress.register(context.getProgress());
+        try {
+            success = startExport(context);
+            return success;
+        } finally {
+            ExportProgress.unregister(context.getProgress());
+            context.getMetrics().record(ExportMetrics.TOTAL, start);
+            reportMetrics(context, success);
+        }
+    }
+
+    /**
+     * write the metrics of a finished export into the log and the process journal, and add them to the statistics of the plugin
+     * 
+     * @param context context of the export
+     * @param success true if the export succeeded
+     */
+    private void reportMetrics(ExportContext context, boolean success) {
+        String summary = "Export " + (success ? "finished" : "failed") + ": " + context.getMetrics().getSummary();
+        log.info("Export Plugin - " + context.getProcessTitle() + ": " + summary);
+        log.info("Export Plugin - " + context.getProcessTitle() + ": " + context.getFileSystem().getSummary());
+        Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, summary);
+        ExportStatistics.getInstance().add(context.getMetrics(), success);
+    }
+
+    /**
+     * get the progress of a running export, e.g. for a user interface or a REST endpoint that polls it
+     * 
+     * @param processId id of the process
+     * @return phase, planned and finished copies, throughput and remaining time, or null if the process is not exported at the moment
+     */
+    public ExportProgress.Snapshot getExportProgress(int processId) {
+        return ExportProgress.getSnapshot(processId);
+    }
+
+    /**
+     * get the progress of all running exports of the plugin
+     * 
+     * @return the progress of every running export
+     */
+    public List<ExportProgress.Snapshot> getRunningExports() {
+        return ExportProgress.getSnapshots();
+    }
+
+    /**
+     * export several processes at the same time. The size of the worker pool is read from the element &lt;batchExport&gt; of the configuration
+     * file.
+     * 
+     * @param processIds ids of all processes that shall be exported
+     * @return one result per process, in the order of the ids
+     * @throws InterruptedException
+     */
+    public List<BatchExportResult> startBatchExport(List<Integer> processIds) throws InterruptedException {
+        XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        int threads = xmlConfig.getInt("batchExport/@threads", Runtime.getRuntime().availableProcessors());
+        boolean virtualThreads = xmlConfig.getBoolean("batchExport/@virtualThreads", false);
+        return startBatchExport(processIds, threads, virtualThreads);
+    }
+
+    /**
+     * export several processes at the same time, each of them with the settings of its own project
+     * 
+     * @param processIds ids of all processes that shall be exported
+     * @param threads maximum number of processes that are exported at the same time
+     * @param virtualThreads true if the processes should be exported on virtual threads instead of platform threads
+     * @return one result per process, in the order of the ids
+     * @throws InterruptedException
+     */
+    public List<BatchExportResult> startBatchExport(List<Integer> processIds, int threads, boolean virtualThreads) throws InterruptedException {
+        log.debug("Export Plugin - starting batch export of " + processIds.size() + " processes with " + threads + " threads");
+        List<BatchExportResult> results = runForAll(processIds, threads, virtualThreads, processId -> {
+            try {
+                return startBatchExport(processId);
+            } catch (RuntimeException e) {
+                log.error("Export Plugin - batch export of process " + processId + " failed", e);
+                return new BatchExportResult(processId, null, false, Collections.singletonList(String.valueOf(e)), 0, 0);
+            }
+        });
+        int failed = 0;
+        long copiedBytes = 0;
+        for (BatchExportResult result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+            }
+            copiedBytes += result.getCopiedBytes();
+        }
+        log.info("Export Plugin - batch export finished: " + (results.size() - failed) + " processes exported, " + failed + " failed, "
+                + copiedBytes + " bytes copied");
+        return results;
+    }
+
+    /**
+     * run a task for every process of a batch on a worker pool of its own
+     * 
+     * @param processIds ids of all processes of the batch
+     * @param threads maximum number of processes that are handled at the same time
+     * @param virtualThreads true if virtual threads should be used instead of platform threads
+     * @param task creates the result of a single process, it has to handle its own exceptions
+     * @return one result per process, in the order of the ids
+     * @throws InterruptedException
+     */
+    private <R> List<R> runForAll(List<Integer> processIds, int threads, boolean virtualThreads, Function<Integer, R> task)
+            throws InterruptedException {
+        ExecutorService executor = createBatchExecutor(threads, virtualThreads);
+        try {
+            List<Future<R>> pendingTasks = new ArrayList<>(processIds.size());
+            for (Integer processId : processIds) {
+                pendingTasks.add(executor.submit(() -> task.apply(processId)));
+            }
+            List<R> results = new ArrayList<>(processIds.size());
+            for (int i = 0; i < pendingTasks.size(); i++) {
+                try {
+                    results.add(pendingTasks.get(i).get());
+                } catch (ExecutionException e) {
+                    // only errors get here, exceptions are handled by the task
+                    throw new IllegalStateException("Batch task of process " + processIds.get(i) + " failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * create the worker pool of a batch
+     * 
+     * @param threads maximum number of processes that are handled at the same time
+     * @param virtualThreads true if virtual threads should be used instead of platform threads
+     * @return the ExecutorService, it needs to be shut down by the caller
+     */
+    private ExecutorService createBatchExecutor(int threads, boolean virtualThreads) {
+        ThreadFactory threadFactory;
+        if (virtualThreads) {
+            threadFactory = Thread.ofVirtual().name("configurable-export-batch-", 1).factory();
+        } else {
+            threadFactory = Thread.ofPlatform().name("configurable-export-batch-", 1).daemon(true).factory();
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+
+    /**
+     * check the exports of several processes at the same time without writing anything. The size of the worker pool is read from the element
+     * &lt;batchExport&gt; of the configuration file.
+     * 
+     * @param processIds ids of all processes that shall be checked
+     * @return one result per process, in the order of the ids
+     * @throws InterruptedException
+     */
+    public List<PreflightResult> preflightBatch(List<Integer> processIds) throws InterruptedException {
+        XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        int threads = xmlConfig.getInt("batchExport/@threads", Runtime.getRuntime().availableProcessors());
+        boolean virtualThreads = xmlConfig.getBoolean("batchExport/@virtualThreads", false);
+        List<PreflightResult> results = runForAll(processIds, threads, virtualThreads, processId -> {
+            try {
+                return preflight(processId);
+            } catch (RuntimeException e) {
+                log.error("Export Plugin - preflight of process " + processId + " failed", e);
+                return new PreflightResult(processId, null, Collections.emptyList(), Collections.singletonList(String.valueOf(e)),
+                        Collections.emptyList(), 0);
+            }
+        });
+        int rejected = 0;
+        for (PreflightResult result : results) {
+            if (!result.isExportable()) {
+                rejected++;
+            }
+        }
+        log.info("Export Plugin - preflight finished: " + (results.size() - rejected) + " processes exportable, " + rejected + " rejected");
+        return results;
+    }
+
+    /**
+     * check the export of a single process of a batch
+     * 
+     * @param processId id of the process
+     * @return the result of the preflight
+     */
+    private PreflightResult preflight(int processId) {
+        Process process = ProcessManager.getProcessById(processId);
+        if (process == null) {
+            String message = "Process " + processId + " does not exist.";
+            return new PreflightResult(processId, null, Collections.emptyList(), Collections.singletonList(message), Collections.emptyList(), 0);
+        }
+        return preflight(process);
+    }
+
+    /**
+     * check the export of a process without writing anything: the targets are evaluated, the destinations are resolved, the source folders
+     * are checked and the metadata is validated. Neither the destination nor the process journal are touched.
+     * 
+     * @param process process that shall be checked
+     * @return the result of the preflight
+     */
+    public PreflightResult preflight(Process process) {
+        long start = System.nanoTime();
+        ExportContext context = new ExportContext(process, getExportProfile(process));
+        List<String> destinations = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        try {
+            preflight(context, destinations, warnings);
+        } catch (Exception e) {
+            log.error("Export Plugin - preflight of process " + context.getProcessTitle() + " failed", e);
+            context.getProblems().add("Preflight failed: " + e.getMessage());
+        } finally {
+            process.setProjekt(context.getOriginalProject());
+        }
+        return new PreflightResult(context.getProcessId(), context.getProcessTitle(), destinations, context.getProblems(), warnings,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * run all checks of a preflight, problems are added to the context
+     * 
+     * @param context context of the export
+     * @param destinations list the resolved destinations are added to
+     * @param warnings list all findings are added to that would not cancel the export
+     * @throws ReadException
+     * @throws IOException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws PreferencesException
+     * @throws WriteException
+     */
+    private void preflight(ExportContext context, List<String> destinations, List<String> warnings)
+            throws ReadException, IOException, SwapException, DAOException, PreferencesException, WriteException {
+        Process process = context.getProcess();
+        ExportProfile profile = context.getProfile();
+        String configurationProblem = checkProfile(profile);
+        if (configurationProblem != null) {
+            context.getProblems().add(configurationProblem);
+            return;
+        }
 
-        initializePrivateFields(process, config);
+        Fileformat fileformat = process.readMetadataFile();
+        DigitalDocument digDoc = fileformat.getDigitalDocument();
+        List<Project> projects;
+        if (profile.getTargets().isEmpty()) {
+            projects = Collections.singletonList(context.getOriginalProject());
+        } else {
+            List<Project> matchedProjects = matchTargets(context, new VariableReplacer(digDoc, context.getPrefs(), process, null));
+            if (matchedProjects == null) {
+                return;
+            }
+            projects = planTargets(context, matchedProjects, digDoc);
+            if (projects.isEmpty()) {
+                warnings.add("No target condition is met, the process would not be exported.");
+            }
+        }
 
-        String[] targetProjectNames = config.getStringArray("./target/@projectName");
-        String[] targetKeys = config.getStringArray("./target/@key");
-        String[] targetValues = config.getStringArray("./target/@value");
-        ArrayList<Project> matchedProjects = new ArrayList<>();
+        List<DigitalDocument> documents = getDocumentsPerExport(fileformat, projects.size());
+        for (int i = 0; i < projects.size(); i++) {
+            Project project = projects.get(i);
+            process.setProjekt(project);
+            Fileformat gdzfile = createExportFileformat(context, documents.get(i));
+            if (gdzfile == null) {
+                return;
+            }
+            Path destination = getDestination(context, new VariableReplacer(gdzfile.getDigitalDocument(), context.getPrefs(), process, null));
+            destinations.add(
+                    (profile.getPackaging() == Packaging.NONE ? destination : getPackageFile(context, project, destination)).toString());
+            if (!validateMetadata(context, gdzfile)) {
+                return;
+            }
+        }
+        process.setProjekt(context.getOriginalProject());
+
+        // missing folders are skipped by the export, so they are no problem
+        List<String> folderTypes = Arrays.asList(MEDIA_FOLDER, MASTER_FOLDER, OCR_FOLDER, SOURCE_FOLDER, IMPORT_FOLDER, EXPORT_FOLDER,
+                ITM_FOLDER, VALIDATION_FOLDER);
+        List<Boolean> included = Arrays.asList(profile.isIncludeDerivate(), profile.isIncludeMaster(), profile.isIncludeOcr(),
+                profile.isIncludeSource(), profile.isIncludeImport(), profile.isIncludeExport(), profile.isIncludeITM(),
+                profile.isIncludeValidation());
+        for (int i = 0; i < folderTypes.size(); i++) {
+            Path folder = getSourcePathForCopy(process, folderTypes.get(i));
+            if (included.get(i) && !context.getFileSystem().isFileExists(folder)) {
+                warnings.add("The " + folderTypes.get(i) + " folder " + folder + " does not exist.");
+            }
+        }
+        for (ExportProfile.GenericFolder genericFolder : profile.getGenericFolders()) {
+            Path folder = Paths.get(process.getConfiguredImageFolder(genericFolder.getName()));
+            if (!context.getFileSystem().isFileExists(folder)) {
+                warnings.add("The folder " + genericFolder.getName() + " (" + folder + ") does not exist.");
+            }
+        }
+    }
 
-        if (targetProjectNames.length != targetKeys.length) {
-            String message = "Malformated Configurationfile: Missing Attribute in target tag!";
+    /**
+     * export a single process of a batch export
+     * 
+     * @param processId id of the process
+     * @return the result of the export
+     */
+    private BatchExportResult startBatchExport(int processId) {
+        long start = System.nanoTime();
+        Process process = ProcessManager.getProcessById(processId);
+        if (process == null) {
+            String message = "Export cancelled! Process " + processId + " does not exist.";
             log.error(message);
-            Helper.setFehlerMeldung(null, processTitle + ": ", message);
-            Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
-            problems.add(message);
+            return new BatchExportResult(processId, null, false, Collections.singletonList(message), 0, 0);
+        }
+        ExportContext context = new ExportContext(process, getExportProfile(process));
+        boolean success = false;
+        try {
+            success = runTrackedExport(context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.getProblems().add("Export interrupted");
+        } catch (Exception e) {
+            String message = "Export cancelled! Export of process " + context.getProcessTitle() + " failed: ";
+            log.error(message, e);
+            Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message + e.getMessage());
+            context.getProblems().add(message + e.getMessage());
+        }
+        long duration = (System.nanoTime() - start) / 1000000;
+        log.debug("Export Plugin - process " + context.getProcessTitle() + " exported in " + duration + " ms");
+        return new BatchExportResult(processId, context.getProcessTitle(), success, context.getProblems(), context.getCopiedBytes(), duration);
+    }
+
+    /**
+     * evaluate the targets and export the process of the context
+     * 
+     * @param context context of the export
+     * @return true if the process is successfully exported, false otherwise
+     */
+    private boolean startExport(ExportContext context) throws IOException, InterruptedException, WriteException, PreferencesException,
+            SwapException, DAOException, TypeNotAllowedForParentException {
+        Process process = context.getProcess();
+        ExportProfile profile = context.getProfile();
+        List<ExportProfile.TargetRule> targets = profile.getTargets();
+
+        String configurationProblem = checkProfile(profile);
+        if (configurationProblem != null) {
+            log.error(configurationProblem);
+            Helper.setFehlerMeldung(null, context.getProcessTitle() + ": ", configurationProblem);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, configurationProblem);
+            context.getProblems().add(configurationProblem);
             return false;
         }
 
+        // the metadata file is read only once and reused for the target evaluation, every export gets its own copy of the DigitalDocument
+        Fileformat fileformat;
+        DigitalDocument digDoc;
         VariableReplacer replacer;
         try {
-            replacer = new VariableReplacer(process.readMetadataFile().getDigitalDocument(), this.myPrefs, process, null);
+            context.getProgress().setPhase(ExportMetrics.READ_METADATA);
+            long readStart = System.nanoTime();
+            fileformat = process.readMetadataFile();
+            digDoc = fileformat.getDigitalDocument();
+            context.getMetrics().record(ExportMetrics.READ_METADATA, readStart);
+            replacer = new VariableReplacer(digDoc, context.getPrefs(), process, null);
         } catch (ReadException ex) {
             String message = "Couldn't create Variable replacer!";
             Helper.setFehlerMeldung(message, ex);
-            Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
             log.error(message, ex);
-            problems.add(message + ex.getMessage());
+            context.getProblems().add(message + ex.getMessage());
             return false;
         }
 
-        for (int i = 0; i < targetProjectNames.length; i++) {
-            targetKeys[i] = replacer.replace(targetKeys[i]);
-            if (targetKeys[i] != null && targetKeys[i].equals(targetValues[i])) {
-                try {
-                    if (targetProjectNames[i].trim().isBlank()) {
-                        matchedProjects.add(oldProject);
-                    } else {
-                        matchedProjects.add(ProjectManager.getProjectByName(targetProjectNames[i].trim()));
-                    }
+        if (targets.isEmpty()) {
+            return runExports(context, fileformat, Collections.singletonList(context.getOriginalProject()));
+        }
 
-                } catch (DAOException ex) {
-                    String message = "Export cancelled! A target condition was met but the project " + targetProjectNames[i]
-                            + " does not exist. Please update the configuration file!";
-                    log.error(message, ex);
-                    Helper.setFehlerMeldung(message, ex);
-                    Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
-                    problems.add(message + ex.getMessage());
-                    return false;
+        List<Project> matchedProjects = matchTargets(context, replacer);
+        if (matchedProjects == null) {
+            String message = context.getProblems().get(context.getProblems().size() - 1);
+            Helper.setFehlerMeldung(null, context.getProcessTitle() + ": ", message);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
+            return false;
+        }
+
+        // targets.size() >= 1
+        try {
+            return runExports(context, fileformat, planTargets(context, matchedProjects, digDoc));
+        } catch (IOException | InterruptedException | SwapException | DAOException | PreferencesException | WriteException
+                | TypeNotAllowedForParentException ex) {
+            // if runExport throws an Exception make sure the project is reset before
+            // rethrowing
+            process.setProjekt(context.getOriginalProject());
+            throw ex;
+        }
+    }
+
+    /**
+     * check the compiled configuration for errors that cancel every export
+     * 
+     * @param profile compiled configuration of the project
+     * @return the problem, or null if the configuration can be used
+     */
+    private String checkProfile(ExportProfile profile) {
+        if (profile.isTargetsMalformed()) {
+            return "Malformated Configurationfile: Missing or invalid Attribute in target tag!";
+        }
+        if (profile.getPackaging() == null) {
+            return "Export cancelled! The packaging '" + profile.getConfiguredPackaging() + "' is not supported.";
+        }
+        return null;
+    }
+
+    /**
+     * get the projects of all target conditions that are met
+     * 
+     * @param context context of the export
+     * @param replacer VariableReplacer of the process
+     * @return the matched projects in configuration order, or null if a matched project does not exist
+     */
+    private List<Project> matchTargets(ExportContext context, VariableReplacer replacer) {
+        List<Project> matchedProjects = new ArrayList<>();
+        for (ExportProfile.TargetRule target : context.getProfile().matchTargets(replacer::replace)) {
+            if (target.getProjectName().isBlank()) {
+                matchedProjects.add(context.getOriginalProject());
+                continue;
+            }
+            String message = "Export cancelled! A target condition was met but the project " + target.getProjectName()
+                    + " does not exist. Please update the configuration file!";
+            try {
+                Project project = ProjectCache.getProject(target.getProjectName());
+                if (project == null) {
+                    log.error(message);
+                    context.getProblems().add(message);
+                    return null;
                 }
+                matchedProjects.add(project);
+            } catch (DAOException ex) {
+                log.error(message, ex);
+                context.getProblems().add(message + ex.getMessage());
+                return null;
             }
         }
+        return matchedProjects;
+    }
 
-        if (targetProjectNames.length < 1) {
-            return runExport(process);
+    /**
+     * plan the exports of all matched projects. Projects that resolve to the same destination are only exported once, using the last of them,
+     * since each of their exports would overwrite the previous one anyway.
+     * 
+     * @param context context of the export
+     * @param matchedProjects all projects whose target condition was met, in configuration order
+     * @param digDoc DigitalDocument used to resolve the destinations
+     * @return the projects that need to be exported
+     */
+    private List<Project> planTargets(ExportContext context, List<Project> matchedProjects, DigitalDocument digDoc) {
+        Process process = context.getProcess();
+        Map<Path, Project> plannedExports = new LinkedHashMap<>();
+        for (Project project : matchedProjects) {
+            process.setProjekt(project);
+            Path destination = getDestination(context, new VariableReplacer(digDoc, context.getPrefs(), process, null));
+            if (plannedExports.remove(destination) != null) {
+                log.debug("Export Plugin - skipping duplicate export to " + destination);
+            }
+            plannedExports.put(destination, project);
         }
+        process.setProjekt(context.getOriginalProject());
+        return new ArrayList<>(plannedExports.values());
+    }
 
-        // targetProjectNames.length >= 1
-        try {
-            for (Project project : matchedProjects) {
+    /**
+     * get the export destination of the current project of the process
+     * 
+     * @param context context of the export
+     * @param replacer VariableReplacer of the process
+     * @return Path of the export destination
+     */
+    private Path getDestination(ExportContext context, VariableReplacer replacer) {
+        Project project = context.getProcess().getProjekt();
+        String exportRootDirectory = replacer.replace(project.getDmsImportImagesPath());
+        if (project.isDmsImportCreateProcessFolder()) {
+            return Paths.get(exportRootDirectory, context.getProcessTitle());
+        }
+        return Paths.get(exportRootDirectory);
+    }
+
+    /**
+     * executes the exports of a given process with the settings of all given projects. The METS files of all projects are prepared first, then
+     * the folders of all projects are copied in one pass, so that every source file is read only once.
+     * 
+     * @param context context of the export
+     * @param fileformat the already read metadata file of the process
+     * @param projects projects whose settings should be used, one export per project
+     * @return true if the process is successfully exported, false otherwise
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws PreferencesException
+     * @throws WriteException
+     * @throws TypeNotAllowedForParentException
+     */
+    private boolean runExports(ExportContext context, Fileformat fileformat, List<Project> projects) throws IOException, InterruptedException,
+            SwapException, DAOException, PreferencesException, WriteException, TypeNotAllowedForParentException {
+        Process process = context.getProcess();
+        ExportProfile profile = context.getProfile();
+        String processTitle = context.getProcessTitle();
+        List<PreparedExport> preparedExports = new ArrayList<>();
+        try (FolderCopier copier = new FolderCopier(profile.getParallelism(), profile.getFanOut(), profile.createFileTransfer())) {
+            copier.setMetrics(context.getMetrics());
+            copier.setFileSystem(context.getFileSystem());
+            copier.setProgress(context.getProgress());
+            List<DigitalDocument> documents = getDocumentsPerExport(fileformat, projects.size());
+            for (int i = 0; i < projects.size(); i++) {
+                Project project = projects.get(i);
                 process.setProjekt(project);
-                if (!runExport(process)) {
-                    String message = "Export cancelled! Export with Parameters of Project" + project.getTitel() + "failed!";
+                PreparedExport preparedExport = prepareExport(context, documents.get(i), copier);
+                if (preparedExport == null) {
+                    reportFailedTarget(context, project);
+                    deleteTemporaryFiles(preparedExports);
+                    process.setProjekt(context.getOriginalProject());
+                    return false;
+                }
+                preparedExports.add(preparedExport);
+            }
+            process.setProjekt(context.getOriginalProject());
+            if (projects.size() > 1) {
+                log.debug("Export Plugin - metadata file was read once and reused for " + projects.size() + " exports");
+            }
+
+            // wait until all limited destinations accept another writer
+            DestinationLimits limits = getDestinationLimits();
+            List<Path> destinations = new ArrayList<>(preparedExports.size());
+            for (PreparedExport preparedExport : preparedExports) {
+                destinations.add(preparedExport.destination);
+            }
+            List<DestinationLimits.Limit> acquiredLimits = limits.acquireWriters(destinations);
+            try {
+                copier.setLimits(limits);
+                // copy folders of all projects to their destinations, packages get their files when they are written
+                List<String> copyProblems = Collections.emptyList();
+                if (profile.getPackaging() == Packaging.NONE && profile.isPipelinedExport()) {
+                    copyProblems = copyWhileStaging(context, preparedExports, copier);
+                } else if (profile.getPackaging() == Packaging.NONE) {
+                    context.getProgress().setPhase(ExportMetrics.COPY_FOLDERS);
+                    long copyStart = System.nanoTime();
+                    copyProblems = copier.execute();
+                    context.getMetrics().record(ExportMetrics.COPY_FOLDERS, copyStart, 0, copier.getCopiedBytes());
+                }
+                if (!copyProblems.isEmpty()) {
+                    String message = "Export cancelled because " + copyProblems.size() + " files could not be copied";
                     log.error(message);
-                    problems.add(message);
-                    Helper.setMeldung(null, processTitle + ": ", message);
-                    Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
-                    process.setProjekt(oldProject);
+                    Helper.setFehlerMeldung(null, processTitle + ": ", message);
+                    Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
+                    context.getProblems().add(message);
+                    context.getProblems().addAll(copyProblems);
+                    deleteTemporaryFiles(preparedExports);
                     return false;
                 }
+
+                for (PreparedExport preparedExport : preparedExports) {
+                    finishExport(context, preparedExport, copier);
+                }
+            } finally {
+                limits.releaseWriters(acquiredLimits);
             }
+            context.addCopiedBytes(copier.getCopiedBytes());
         } catch (IOException | InterruptedException | SwapException | DAOException | PreferencesException | WriteException
-                | TypeNotAllowedForParentException ex) {
-            // if runExport throws an Exception make sure the project is reset before
-            // rethrowing
-            process.setProjekt(oldProject);
+                | TypeNotAllowedForParentException | RuntimeException ex) {
+            deleteTemporaryFiles(preparedExports);
             throw ex;
         }
-
         return true;
     }
 
     /**
-     * initialize all private fields for later use
+     * report that the export with the settings of a target project failed
      * 
-     * @param process Goobi process
-     * @param config SubnodeConfiguration
+     * @param context context of the export
+     * @param project project of the failed export
      */
-    private void initializePrivateFields(Process process, SubnodeConfiguration config) {
-        embedMarc = config.getBoolean("./includeMarcXml", false);
-        processId = process.getId();
-        log.debug("Export Plugin - Process ID: " + processId);
-        processTitle = process.getTitel();
-        log.debug("Export Plugin - Process Title: " + processTitle);
-        // save current project
-        oldProject = process.getProjekt();
-        log.debug("Export Plugin - Original Project: " + oldProject.getTitel());
-
-        foldersConfig = config.configurationAt(FOLDERS_PARENT_ELEMENT);
+    private void reportFailedTarget(ExportContext context, Project project) {
+        if (!context.getProfile().getTargets().isEmpty()) {
+            String message = "Export cancelled! Export with Parameters of Project" + project.getTitel() + "failed!";
+            log.error(message);
+            context.getProblems().add(message);
+            Helper.setMeldung(null, context.getProcessTitle() + ": ", message);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
+        }
+    }
 
-        imageFolders = foldersConfig.getStringArray(GENERIC_FOLDER);
-        includeDerivate = foldersConfig.getBoolean(MEDIA_FOLDER + ENABLED_PROPERTY, false);
-        includeMaster = foldersConfig.getBoolean(MASTER_FOLDER + ENABLED_PROPERTY, false);
-        includeOcr = foldersConfig.getBoolean(OCR_FOLDER + ENABLED_PROPERTY, false);
-        includeSource = foldersConfig.getBoolean(SOURCE_FOLDER + ENABLED_PROPERTY, false);
-        includeImport = foldersConfig.getBoolean(IMPORT_FOLDER + ENABLED_PROPERTY, false);
-        includeExport = foldersConfig.getBoolean(EXPORT_FOLDER + ENABLED_PROPERTY, false);
-        includeITM = foldersConfig.getBoolean(ITM_FOLDER + ENABLED_PROPERTY, false);
-        includeValidation = foldersConfig.getBoolean(VALIDATION_FOLDER + ENABLED_PROPERTY, false);
-        ocrSuffix = foldersConfig.getStringArray(OCR_FOLDER + "/sourceFolderSuffix");
+    /**
+     * copy the planned folders in a background thread, while the METS files of all exports are written and get their MARC records in their
+     * staging folders. The metadata was already validated when the exports were prepared. If staging an export fails, the remaining copies
+     * are cancelled and all files and folders that the copy created are removed again.
+     * 
+     * @param context context of the export
+     * @param preparedExports all exports of the process
+     * @param copier FolderCopier with the planned files
+     * @return the messages of all failed copies
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws PreferencesException
+     * @throws WriteException
+     * @throws TypeNotAllowedForParentException
+     */
+    private List<String> copyWhileStaging(ExportContext context, List<PreparedExport> preparedExports, FolderCopier copier)
+            throws IOException, InterruptedException, SwapException, DAOException, PreferencesException, WriteException,
+            TypeNotAllowedForParentException {
+        copier.setRollback(true);
+        ExecutorService copyExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "configurable-export-pipeline-" + context.getProcessId());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<List<String>> pendingCopy = copyExecutor.submit(() -> {
+            long copyStart = System.nanoTime();
+            List<String> result = copier.execute();
+            context.getMetrics().record(ExportMetrics.COPY_FOLDERS, copyStart, 0, copier.getCopiedBytes());
+            return result;
+        });
+        boolean staged = false;
+        try {
+            stageMetadata(context, preparedExports);
+            staged = true;
+        } finally {
+            if (!staged) {
+                // the METS files will not be published, so the remaining copies are useless
+                pendingCopy.cancel(true);
+            }
+            copyExecutor.shutdown();
+            while (!copyExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Export Plugin - waiting for the folders of " + context.getProcessTitle());
+            }
+            if (!staged) {
+                copier.rollback();
+            }
+        }
+        context.getProgress().setPhase(ExportMetrics.COPY_FOLDERS);
+        try {
+            List<String> copyProblems = pendingCopy.get();
+            if (copyProblems.isEmpty()) {
+                copier.commit();
+            } else {
+                copier.rollback();
+            }
+            return copyProblems;
+        } catch (ExecutionException e) {
+            copier.rollback();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
     /**
-     * executes an Export for a given process
+     * write the METS files of all pipelined exports, and embed their MARC records while they are still in the staging folder
      * 
-     * @param process process that shall be exported
-     * @return true if the process is successfully exported, false otherwise
+     * @param context context of the export
+     * @param preparedExports all exports of the process, their metadata is already validated
      * @throws IOException
      * @throws InterruptedException
      * @throws SwapException
@@ -266,165 +923,520 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
      * @throws WriteException
      * @throws TypeNotAllowedForParentException
      */
-    private boolean runExport(Process process) throws IOException, InterruptedException, SwapException, DAOException, PreferencesException,
-            WriteException, TypeNotAllowedForParentException {
-        Fileformat gdzfile;
-        ExportFileformat newfile = MetadatenHelper.getExportFileformatByName(process.getProjekt().getFileFormatDmsExport(), process.getRegelsatz());
+    private void stageMetadata(ExportContext context, List<PreparedExport> preparedExports) throws IOException, InterruptedException,
+            SwapException, DAOException, PreferencesException, WriteException, TypeNotAllowedForParentException {
+        Process process = context.getProcess();
         try {
-            gdzfile = process.readMetadataFile();
-            newfile.setDigitalDocument(gdzfile.getDigitalDocument());
-            gdzfile = newfile;
+            for (PreparedExport preparedExport : preparedExports) {
+                process.setProjekt(preparedExport.project);
+                writeMetsFile(context, preparedExport.stagedFile, preparedExport.fileformat);
+
+                MarcFiles marcFiles = findMarcFiles(context, preparedExport);
+                embedStagedMarc(context, preparedExport.stagedFile, marcFiles.sourceMarcFile, marcFiles.digitalMarcFile);
+                Path stagedAnchorFile = preparedExport.getStagedAnchorFile();
+                if (context.getFileSystem().isFileExists(stagedAnchorFile)) {
+                    embedStagedMarc(context, stagedAnchorFile, marcFiles.anchorSourceMarcFile, marcFiles.anchorDigitalMarcFile);
+                }
+                preparedExport.marcEmbedded = true;
+            }
+        } finally {
+            process.setProjekt(context.getOriginalProject());
+        }
+    }
 
-        } catch (Exception e) {
-            String message = "Export canceled opening FileFormat or reading DigitalDocument: ";
-            Helper.setFehlerMeldung(Helper.getTranslation("exportError") + processTitle, e);
-            Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
-            log.error(message, e);
-            problems.add(message + e.getMessage());
-            return false;
+    /**
+     * embed MARC records into a staged METS or anchor file. If the records cannot be embedded, the file is kept without them.
+     * 
+     * @param context context of the export
+     * @param stagedFile Path of the staged file
+     * @param sourceMarcFile Path of the MARC record of the source that should be embedded, can be null
+     * @param digitalMarcFile Path of the MARC record of the digital copy that should be embedded, can be null
+     * @throws IOException
+     */
+    private void embedStagedMarc(ExportContext context, Path stagedFile, Path sourceMarcFile, Path digitalMarcFile) throws IOException {
+        if (sourceMarcFile == null && digitalMarcFile == null) {
+            return;
+        }
+        if (updateXmlFile(context, sourceMarcFile, digitalMarcFile, stagedFile, stagedFile)) {
+            context.getFileSystem().invalidate(stagedFile);
         }
+    }
 
-        // use the system tmp folder
+    /**
+     * check if the METS file of an export is staged inside of its destination. The staged file is published by a rename then, which only works
+     * on the local file system.
+     * 
+     * @param context context of the export
+     * @return true if the METS file is staged in a hidden folder of the destination, false if it is staged in the temporary folder
+     */
+    private boolean isStagedInDestination(ExportContext context) {
+        ExportProfile profile = context.getProfile();
+        return profile.isWriteMetsToDestination() && profile.getPackaging() == Packaging.NONE && FileSystemView.isLocalStorage();
+    }
 
-        // use the goobi internal temp folder instead of the system one
-        Path temporaryFile = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), processTitle + ".xml");
-        if (StorageProvider.getInstance().isFileExists(temporaryFile)) {
-            StorageProvider.getInstance().deleteFile(temporaryFile);
+    /**
+     * writes the METS file of the current project of the process to its staging location, validates it and adds all folders to the copy plan
+     * 
+     * @param context context of the export
+     * @param digDoc DigitalDocument of this export, it is changed by the METS preparation
+     * @param copier FolderCopier that collects the copies of all folders
+     * @return the PreparedExport, or null if the export failed
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws PreferencesException
+     * @throws WriteException
+     * @throws TypeNotAllowedForParentException
+     */
+    private PreparedExport prepareExport(ExportContext context, DigitalDocument digDoc, FolderCopier copier)
+            throws IOException, InterruptedException, SwapException, DAOException, PreferencesException, WriteException,
+            TypeNotAllowedForParentException {
+        Process process = context.getProcess();
+        ExportProfile profile = context.getProfile();
+        Fileformat gdzfile = createExportFileformat(context, digDoc);
+        if (gdzfile == null) {
+            String message = context.getProblems().get(context.getProblems().size() - 1);
+            Helper.setFehlerMeldung(null, Helper.getTranslation("exportError") + context.getProcessTitle() + ": ", message);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
+            return null;
+        }
+
+        // validate the metadata before anything is written, so that an invalid process is rejected without any I/O
+        if (!validateMetadata(context, gdzfile)) {
+            return null;
+        }
+        boolean pipelined = profile.isPipelinedExport() && profile.getPackaging() == Packaging.NONE;
+
+        // prepare destination path
+        VariableReplacer replacer = new VariableReplacer(gdzfile.getDigitalDocument(), context.getPrefs(), process, null);
+        Path destination = getDestination(context, replacer);
+        log.debug("Export Plugin - directory: " + destination);
+        boolean packaged = profile.getPackaging() != Packaging.NONE;
+        // a package only needs the folder it is written into, the destination itself exists inside of the package
+        Path createdDirectory = packaged ? getPackageFile(context, process.getProjekt(), destination).getParent() : destination;
+        FileSystemView fileSystem = context.getFileSystem();
+        if (!fileSystem.isFileExists(createdDirectory)) {
+            fileSystem.createDirectories(createdDirectory);
+            log.debug("Export Plugin - directory created as it did not exist");
+        }
+
+        // every export stages its METS file in its own folder, so that concurrent exports never share a file
+        Path stagingDirectory;
+        if (isStagedInDestination(context)) {
+            // hidden folder inside of the destination, so that the METS file can be published by an atomic rename
+            stagingDirectory = Files.createTempDirectory(destination, ".export-staging-");
+        } else {
+            if (profile.isWriteMetsToDestination() && !packaged) {
+                log.warn("Export Plugin - writeMetsToDestination needs the local file system, the METS file is staged in the temporary folder");
+            }
+            // use the goobi internal temp folder instead of the system one
+            Path temporaryFolder = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder());
+            stagingDirectory = Files.createTempDirectory(temporaryFolder, "export-" + context.getProcessId() + "-");
+        }
+        PreparedExport preparedExport = new PreparedExport(process.getProjekt(), destination,
+                stagingDirectory.resolve(context.getProcessTitle() + ".xml"), stagingDirectory, gdzfile);
+
+        // write mets file to its staging location
+        if (!pipelined) {
+            writeMetsFile(context, preparedExport.stagedFile, gdzfile);
         }
 
-        // write mets file to temp folder
-        writeMetsFile(process, temporaryFile.toString(), gdzfile, false);
+        // the manifests and the journal compare and write the files of the destination directly
+        boolean trackFiles = !packaged && FileSystemView.isLocalStorage();
+        if (!packaged && !trackFiles && (profile.isIncrementalExport() || profile.getChecksumAlgorithm() != null || profile.isResumableExport())) {
+            log.warn("Export Plugin - incremental, checksummed and resumable exports need the local file system, " + context.getProcessTitle()
+                    + " is exported without them");
+        }
+        if (profile.isIncrementalExport() && trackFiles) {
+            copier.addManifest(ExportManifest.load(destination, profile.isIncrementalChecksum(), profile.isIncrementalDeleteRemoved()));
+        }
+        if (profile.getChecksumAlgorithm() != null && trackFiles) {
+            preparedExport.checksumManifest = ChecksumManifest.load(destination, profile.getChecksumAlgorithm());
+            copier.addChecksumManifest(preparedExport.checksumManifest, profile.isVerifyChecksums());
+        }
+        if (profile.isResumableExport() && trackFiles) {
+            preparedExport.copyJournal = CopyJournal.open(destination, getCopyJournalFile(context, destination));
+            copier.addJournal(preparedExport.copyJournal);
+        }
 
+        // add folders to the copy plan
+        context.getProgress().setPhase(ExportMetrics.PLAN_FOLDERS);
+        long planStart = System.nanoTime();
+        int plannedFiles = copier.getPlannedFiles();
+        performCopyFolders(context, destination, replacer, copier);
+        context.getMetrics().record(ExportMetrics.PLAN_FOLDERS, planStart, copier.getPlannedFiles() - plannedFiles, 0);
+
+        return preparedExport;
+    }
+
+    /**
+     * get a DigitalDocument for every export of a process. Trimming, validating and writing the METS file change the document, so every
+     * export gets its own copy, taken before any export changed it. The last export uses the document of the metadata file itself.
+     * 
+     * @param fileformat the already read metadata file of the process
+     * @param exports number of exports
+     * @return one DigitalDocument per export
+     * @throws PreferencesException if the document cannot be read from the metadata file
+     * @throws WriteException if the document cannot be copied
+     */
+    private List<DigitalDocument> getDocumentsPerExport(Fileformat fileformat, int exports) throws PreferencesException, WriteException {
+        DigitalDocument digDoc = fileformat.getDigitalDocument();
+        List<DigitalDocument> documents = new ArrayList<>(exports);
+        for (int i = 1; i < exports; i++) {
+            documents.add(digDoc.copyDigitalDocument());
+        }
+        documents.add(digDoc);
+        return documents;
+    }
+
+    /**
+     * create the export wrapper of the current project of the process around a DigitalDocument
+     * 
+     * @param context context of the export
+     * @param digDoc DigitalDocument of the export
+     * @return the Fileformat of the current project, or null if it cannot be created
+     */
+    private Fileformat createExportFileformat(ExportContext context, DigitalDocument digDoc) {
+        Process process = context.getProcess();
+        try {
+            ExportFileformat newfile =
+                    MetadatenHelper.getExportFileformatByName(process.getProjekt().getFileFormatDmsExport(), process.getRegelsatz());
+            newfile.setDigitalDocument(digDoc);
+            return newfile;
+        } catch (Exception e) {
+            String message = "Export canceled opening FileFormat or reading DigitalDocument: ";
+            log.error(message, e);
+            context.getProblems().add(message + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * trim all metadata and validate it, if the metadata validation is enabled
+     * 
+     * @param context context of the export
+     * @param gdzfile Fileformat of the current project
+     * @return true if the metadata is valid, false otherwise
+     * @throws PreferencesException
+     */
+    private boolean validateMetadata(ExportContext context, Fileformat gdzfile) throws PreferencesException {
+        context.getProgress().setPhase(ExportMetrics.VALIDATE);
+        long trimStart = System.nanoTime();
         trimAllMetadata(gdzfile.getDigitalDocument().getLogicalDocStruct());
+        context.getMetrics().record(ExportMetrics.TRIM_METADATA, trimStart);
 
-        // validate Metadaten
         if (ConfigurationHelper.getInstance().isUseMetadataValidation()) {
+            long validationStart = System.nanoTime();
             MetadatenVerifizierung mv = new MetadatenVerifizierung();
-            if (!mv.validate(gdzfile, this.myPrefs, process)) {
-                problems.add("Export cancelled because of validation errors");
-                problems.addAll(mv.getProblems());
-                process.setProjekt(oldProject);
+            boolean valid = mv.validate(gdzfile, context.getPrefs(), context.getProcess());
+            context.getMetrics().record(ExportMetrics.VALIDATE, validationStart);
+            if (!valid) {
+                context.getProblems().add("Export cancelled because of validation errors");
+                context.getProblems().addAll(mv.getProblems());
                 return false;
             }
         }
+        return true;
+    }
 
-        // prepare destination path
-        DigitalDocument digDoc = gdzfile.getDigitalDocument();
-        VariableReplacer replacer = new VariableReplacer(digDoc, this.myPrefs, process, null);
-        String exportRootDirectory = replacer.replace(process.getProjekt().getDmsImportImagesPath());
+    /**
+     * write the METS file of the current project of the process. The inherited writer reads the preferences from a field of the plugin, so
+     * the METS files of concurrent exports are written one after another.
+     * 
+     * @param context context of the export
+     * @param metsFile Path the METS file is written to
+     * @param gdzfile Fileformat of the current project
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws SwapException
+     * @throws DAOException
+     * @throws PreferencesException
+     * @throws WriteException
+     * @throws TypeNotAllowedForParentException
+     */
+    private synchronized void writeMetsFile(ExportContext context, Path metsFile, Fileformat gdzfile) throws IOException, InterruptedException,
+            SwapException, DAOException, PreferencesException, WriteException, TypeNotAllowedForParentException {
+        context.getProgress().setPhase(ExportMetrics.WRITE_METS);
+        long start = System.nanoTime();
+        this.myPrefs = context.getPrefs();
+        writeMetsFile(context.getProcess(), metsFile.toString(), gdzfile, false);
+        // the anchor file is written next to the METS file
+        context.getFileSystem().invalidate(metsFile);
+        context.getFileSystem().invalidate(Paths.get(metsFile.toString().replace(".xml", "_anchor.xml")));
+        context.getMetrics().record(ExportMetrics.WRITE_METS, start, 1, Files.size(metsFile));
+    }
 
-        Path destination;
-        if (process.getProjekt().isDmsImportCreateProcessFolder()) {
-            destination = Paths.get(exportRootDirectory, processTitle);
-        } else {
-            destination = Paths.get(exportRootDirectory);
+    /**
+     * publishes the staged METS and anchor files in the destination once all folders are copied, MARC records are embedded on the way
+     * 
+     * @param context context of the export
+     * @param preparedExport the export to finish
+     * @param copier FolderCopier with the planned files, they are written into the package if the export is packaged
+     * @throws IOException
+     * @throws SwapException
+     * @throws PreferencesException
+     */
+    private void finishExport(ExportContext context, PreparedExport preparedExport, FolderCopier copier)
+            throws IOException, SwapException, PreferencesException {
+        Path destination = preparedExport.destination;
+        String processTitle = context.getProcessTitle();
+        log.debug("Export Plugin - finishing export with settings of project " + preparedExport.project.getTitel());
+
+        // the staged files of pipelined exports already contain their MARC records
+        MarcFiles marcFiles = preparedExport.marcEmbedded ? new MarcFiles() : findMarcFiles(context, preparedExport);
+
+        if (context.getProfile().getPackaging() != Packaging.NONE) {
+            writePackage(context, preparedExport, marcFiles, copier);
+            deleteTemporaryFiles(Collections.singletonList(preparedExport));
+            return;
         }
-        log.debug("Export Plugin - directory: " + destination);
-        if (!StorageProvider.getInstance().isFileExists(destination)) {
-            StorageProvider.getInstance().createDirectories(destination);
-            log.debug("Export Plugin - directory created as it did not exist");
+
+        // publish the METS file and the anchor file
+        context.getProgress().setPhase(ExportMetrics.PUBLISH_METS);
+        long publishStart = System.nanoTime();
+        Path exportedMetsFile = destination.resolve(processTitle + ".xml");
+        // an unchanged METS file still needs to be rewritten if files changed, otherwise the viewer would not import them
+        boolean skipUnchanged = context.getProfile().isSkipUnchangedMets();
+        publishMetsFile(context, preparedExport.stagedFile, exportedMetsFile, marcFiles.sourceMarcFile, marcFiles.digitalMarcFile,
+                skipUnchanged && copier.getWrittenFiles(destination.toAbsolutePath()) == 0);
+        Path stagedAnchorFile = preparedExport.getStagedAnchorFile();
+        if (context.getFileSystem().isFileExists(stagedAnchorFile)) {
+            Path anchorDest = destination.resolve(processTitle + "_anchor.xml");
+            publishMetsFile(context, stagedAnchorFile, anchorDest, marcFiles.anchorSourceMarcFile, marcFiles.anchorDigitalMarcFile,
+                    skipUnchanged);
+        }
+        context.getMetrics().record(ExportMetrics.PUBLISH_METS, publishStart);
+
+        // the checksums of the folders are already recorded, add the published METS files and write the manifest
+        ChecksumManifest checksumManifest = preparedExport.checksumManifest;
+        if (checksumManifest != null) {
+            checksumManifest.put(exportedMetsFile, ChecksumManifest.createChecksum(exportedMetsFile, checksumManifest.getAlgorithm()));
+            Path anchorDest = destination.resolve(processTitle + "_anchor.xml");
+            if (context.getFileSystem().isFileExists(anchorDest)) {
+                checksumManifest.put(anchorDest, ChecksumManifest.createChecksum(anchorDest, checksumManifest.getAlgorithm()));
+            }
+            checksumManifest.write();
+        }
+        // the export is complete, a later export starts from scratch
+        if (preparedExport.copyJournal != null) {
+            preparedExport.copyJournal.finish();
         }
 
-        // copy folders to destination
-        performCopyFolders(process, destination, replacer);
+        deleteTemporaryFiles(Collections.singletonList(preparedExport));
+    }
 
-        // copy the METS file to destination
-        Path exportedMetsFile = Paths.get(destination.toString(), processTitle + ".xml");
-        StorageProvider.getInstance().copyFile(temporaryFile, exportedMetsFile);
-        Path temporaryAnchorFile = Paths.get(temporaryFile.toString().replace(".xml", "_anchor.xml"));
-        if (StorageProvider.getInstance().isFileExists(temporaryAnchorFile)) {
+    /**
+     * get the local journal file of the copies into a destination. The name only depends on the process and the destination, so that a
+     * retried export finds the journal of the cancelled attempt.
+     *
+     * @param context context of the export
+     * @param destination Path of the export destination
+     * @return Path of the journal file in the goobi internal temp folder
+     */
+    private Path getCopyJournalFile(ExportContext context, Path destination) {
+        UUID destinationId = UUID.nameUUIDFromBytes(destination.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+        String fileName = "export-journal-" + context.getProcessId() + "-" + destinationId + ".tsv";
+        return Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), fileName);
+    }
 
-            Path anchorDest = Paths.get(destination.toString(), processTitle + "_anchor.xml");
-            StorageProvider.getInstance().copyFile(temporaryAnchorFile, anchorDest);
-            StorageProvider.getInstance().deleteFile(temporaryAnchorFile);
+    /**
+     * write the METS and anchor files and all planned files of the destination into a single package. The package is written into a hidden
+     * temporary file first and renamed when it is complete, so that the destination never contains a partial package.
+     * 
+     * @param context context of the export
+     * @param preparedExport the export to finish
+     * @param marcFiles MARC records that should be embedded into the METS and anchor files
+     * @param copier FolderCopier with the planned files
+     * @throws IOException
+     */
+    private void writePackage(ExportContext context, PreparedExport preparedExport, MarcFiles marcFiles, FolderCopier copier)
+            throws IOException {
+        String processTitle = context.getProcessTitle();
+        Packaging packaging = context.getProfile().getPackaging();
+        Path packageFile = getPackageFile(context, preparedExport.project, preparedExport.destination);
+
+        // the size of every entry has to be known before it is written, so the MARC records are embedded into the staged files
+        Path metsFile = preparedExport.stagedFile;
+        if (marcFiles.sourceMarcFile != null || marcFiles.digitalMarcFile != null) {
+            updateXmlFile(context, marcFiles.sourceMarcFile, marcFiles.digitalMarcFile, metsFile, metsFile);
+        }
+        Path anchorFile = preparedExport.getStagedAnchorFile();
+        boolean hasAnchor = context.getFileSystem().isFileExists(anchorFile);
+        if (hasAnchor && (marcFiles.anchorSourceMarcFile != null || marcFiles.anchorDigitalMarcFile != null)) {
+            updateXmlFile(context, marcFiles.anchorSourceMarcFile, marcFiles.anchorDigitalMarcFile, anchorFile, anchorFile);
         }
 
-        // perform METS/MARC-Export
-        Path importDirectory = Paths.get(process.getImportDirectory());
-        // check, if import/xxxx_marc.xml exists
-        if (StorageProvider.getInstance().isFileExists(importDirectory)) {
-            List<Path> filesInFolder = StorageProvider.getInstance().listFiles(importDirectory.toString());
-            performMetsMarcExport(digDoc, temporaryFile, exportedMetsFile, filesInFolder);
+        context.getProgress().setPhase(ExportMetrics.PACKAGE);
+        long start = System.nanoTime();
+        // Files.createTempFile would create the package readable for its owner only, the downstream system needs the default permissions
+        Path temporaryFile = packageFile.resolveSibling("." + packageFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        int writtenFiles;
+        long writtenBytes;
+        try (OutputStream out = storage.newOutputStream(temporaryFile);
+                ArchiveWriter archive = new ArchiveWriter(out, packaging)) {
+            archive.addFile(processTitle + ".xml", metsFile);
+            if (hasAnchor) {
+                archive.addFile(processTitle + "_anchor.xml", anchorFile);
+            }
+            copier.writeTo(archive, preparedExport.destination);
+            writtenFiles = archive.getWrittenFiles();
+            writtenBytes = archive.getWrittenBytes();
+        } catch (IOException e) {
+            storage.deleteFile(temporaryFile);
+            throw e;
         }
+        storage.move(temporaryFile, packageFile);
+        context.getFileSystem().invalidate(packageFile);
+        context.getMetrics().record(ExportMetrics.PACKAGE, start, writtenFiles, writtenBytes);
+        log.info("Export Plugin - wrote " + packageFile + " (" + storage.getFileSize(packageFile) / 1024 + " kB) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
 
-        // delete the temporary METS file
-        StorageProvider.getInstance().deleteFile(temporaryFile);
-        log.debug("Export Plugin - delete file " + temporaryFile);
+    /**
+     * get the package file of an export. It replaces the process folder if the project creates one, otherwise it is written into the
+     * destination.
+     * 
+     * @param context context of the export
+     * @param project Project whose settings are used
+     * @param destination Path of the export destination
+     * @return Path of the package file
+     */
+    private Path getPackageFile(ExportContext context, Project project, Path destination) {
+        String fileName = context.getProcessTitle() + context.getProfile().getPackaging().getExtension();
+        if (project.isDmsImportCreateProcessFolder()) {
+            return destination.resolveSibling(fileName);
+        }
+        return destination.resolve(fileName);
+    }
 
-        process.setProjekt(oldProject);
+    /**
+     * publish a staged METS or anchor file in the destination. MARC records are embedded into the staged file first, the destination is only
+     * written by the StorageProvider.
+     * 
+     * @param context context of the export
+     * @param stagedFile Path of the staged file
+     * @param exportedFile Path of the file in the destination
+     * @param sourceMarcFile Path of the MARC record of the source that should be embedded, can be null
+     * @param digitalMarcFile Path of the MARC record of the digital copy that should be embedded, can be null
+     * @param skipUnchanged true if the file in the destination should be kept if only the timestamps of its METS header differ
+     * @throws IOException
+     */
+    private void publishMetsFile(ExportContext context, Path stagedFile, Path exportedFile, Path sourceMarcFile, Path digitalMarcFile,
+            boolean skipUnchanged) throws IOException {
+        String debugInfo = getDebugInfo(stagedFile, exportedFile, "stagedFile");
+        log.debug(debugInfo);
+        // the MARC records are part of the content that is compared
+        embedStagedMarc(context, stagedFile, sourceMarcFile, digitalMarcFile);
+        if (skipUnchanged && MetsFingerprint.isUnchanged(stagedFile, exportedFile)) {
+            String message = "Export: " + exportedFile.getFileName() + " is unchanged and was not rewritten.";
+            log.debug("Export Plugin - " + message);
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.INFO, message);
+            return;
+        }
+        if (isStagedInDestination(context)) {
+            // the staging folder is on the same file system, so this is a rename
+            StorageProvider.getInstance().move(stagedFile, exportedFile);
+            context.getFileSystem().invalidate(stagedFile);
+        } else {
+            StorageProvider.getInstance().copyFile(stagedFile, exportedFile);
+        }
+        context.getFileSystem().invalidate(exportedFile);
+    }
 
-        return true;
+    /**
+     * delete the staged METS and anchor files of prepared exports
+     * 
+     * @param preparedExports exports whose staged files should be deleted
+     */
+    private void deleteTemporaryFiles(List<PreparedExport> preparedExports) {
+        for (PreparedExport preparedExport : preparedExports) {
+            try {
+                StorageProvider.getInstance().deleteFile(preparedExport.stagedFile);
+                StorageProvider.getInstance().deleteFile(preparedExport.getStagedAnchorFile());
+                StorageProvider.getInstance().deleteDir(preparedExport.stagingDirectory);
+                log.debug("Export Plugin - delete file " + preparedExport.stagedFile);
+            } catch (IOException e) {
+                log.warn("Export Plugin - cannot delete temporary file " + preparedExport.stagedFile, e);
+            }
+        }
     }
 
     /**
      * manage the copy process of folders
      * 
-     * @param process process that shall be exported
+     * @param context context of the export
      * @param destination Path to which the folders should be copied
+     * @param copier FolderCopier that executes the single copies
      * @throws IOException
      * @throws SwapException
      * @throws DAOException
      */
-    private void performCopyFolders(Process process, Path destination, VariableReplacer replacer) throws IOException, SwapException, DAOException {
-        if (includeDerivate) {
-            getFolderAndCopyFolderToDestination(process, destination, MEDIA_FOLDER, replacer);
+    private void performCopyFolders(ExportContext context, Path destination, VariableReplacer replacer, FolderCopier copier)
+            throws IOException, SwapException, DAOException {
+        ExportProfile profile = context.getProfile();
+        if (profile.isIncludeDerivate()) {
+            getFolderAndCopyFolderToDestination(context, destination, MEDIA_FOLDER, replacer, copier);
         }
-        if (includeMaster) {
-            getFolderAndCopyFolderToDestination(process, destination, MASTER_FOLDER, replacer);
+        if (profile.isIncludeMaster()) {
+            getFolderAndCopyFolderToDestination(context, destination, MASTER_FOLDER, replacer, copier);
         }
-        if (includeOcr) {
-            getFolderAndCopyFolderToDestination(process, destination, OCR_FOLDER, replacer);
+        if (profile.isIncludeOcr()) {
+            getFolderAndCopyFolderToDestination(context, destination, OCR_FOLDER, replacer, copier);
         }
-        if (includeSource) {
-            getFolderAndCopyFolderToDestination(process, destination, SOURCE_FOLDER, replacer);
+        if (profile.isIncludeSource()) {
+            getFolderAndCopyFolderToDestination(context, destination, SOURCE_FOLDER, replacer, copier);
         }
-        if (includeImport) {
-            getFolderAndCopyFolderToDestination(process, destination, IMPORT_FOLDER, replacer);
+        if (profile.isIncludeImport()) {
+            getFolderAndCopyFolderToDestination(context, destination, IMPORT_FOLDER, replacer, copier);
         }
-        if (includeExport) {
-            getFolderAndCopyFolderToDestination(process, destination, EXPORT_FOLDER, replacer);
+        if (profile.isIncludeExport()) {
+            getFolderAndCopyFolderToDestination(context, destination, EXPORT_FOLDER, replacer, copier);
         }
-        if (includeITM) {
-            getFolderAndCopyFolderToDestination(process, destination, ITM_FOLDER, replacer);
+        if (profile.isIncludeITM()) {
+            getFolderAndCopyFolderToDestination(context, destination, ITM_FOLDER, replacer, copier);
         }
-        if (includeValidation) {
-            getFolderAndCopyFolderToDestination(process, destination, VALIDATION_FOLDER, replacer);
+        if (profile.isIncludeValidation()) {
+            getFolderAndCopyFolderToDestination(context, destination, VALIDATION_FOLDER, replacer, copier);
         }
 
         // process generic folders
-        List<HierarchicalConfiguration> genericFolderConfigNodes = foldersConfig.configurationsAt(GENERIC_FOLDER);
-
-        for (int i = 0; i < imageFolders.length; ++i) {
-            String configuredFolder = imageFolders[i];
-            Path folderPath = Paths.get(process.getConfiguredImageFolder(configuredFolder));
+        for (ExportProfile.GenericFolder genericFolder : profile.getGenericFolders()) {
+            String configuredFolder = genericFolder.getName();
+            Path folderPath = Paths.get(context.getProcess().getConfiguredImageFolder(configuredFolder));
             log.debug("configuredFolder = " + configuredFolder);
             log.debug("folderPath = " + folderPath);
-            SubnodeConfiguration genericFolderConfig = (SubnodeConfiguration) genericFolderConfigNodes.get(i);
-            getDestPathAndCopyFolder(genericFolderConfig, folderPath, destination, GENERIC_FOLDER, replacer);
+            copier.setFolderType(folderPath, configuredFolder);
+            getDestPathAndCopyFolder(context, genericFolder.getDestinationFolders(), folderPath, destination, GENERIC_FOLDER,
+                    genericFolder.getLinkMode(), replacer, copier);
         }
     }
 
     /**
      * get the source folder path and manage the further copy process
      * 
-     * @param process process that shall be exported
+     * @param context context of the export
      * @param destination Path to which the folders should be copied
      * @param folderType String used to control the differences between different folder types
+     * @param copier FolderCopier that executes the single copies
      * @throws IOException
      * @throws SwapException
      * @throws DAOException
      */
-    private void getFolderAndCopyFolderToDestination(Process process, Path destination, String folderType, VariableReplacer replacer)
-            throws IOException, SwapException, DAOException {
-        Path fromPath = getSourcePathForCopy(process, folderType);
-        if (fromPath == null || !StorageProvider.getInstance().isFileExists(fromPath)) {
+    private void getFolderAndCopyFolderToDestination(ExportContext context, Path destination, String folderType, VariableReplacer replacer,
+            FolderCopier copier) throws IOException, SwapException, DAOException {
+        Path fromPath = getSourcePathForCopy(context.getProcess(), folderType);
+        if (fromPath == null || !context.getFileSystem().isFileExists(fromPath)) {
             return;
         }
+        copier.setFolderType(fromPath, folderType);
         if (OCR_FOLDER.equals(folderType)) {
-            copyOcrFolderToDestination(fromPath, destination);
+            copyOcrFolderToDestination(context, fromPath, destination, replacer, copier);
         } else {
-            SubnodeConfiguration subnodeConfig = foldersConfig.configurationAt(folderType);
-            getDestPathAndCopyFolder(subnodeConfig, fromPath, destination, folderType, replacer);
+            ExportProfile profile = context.getProfile();
+            getDestPathAndCopyFolder(context, profile.getDestinationFolders(folderType), fromPath, destination, folderType,
+                    profile.getLinkMode(folderType), replacer, copier);
         }
     }
 
@@ -464,71 +1476,94 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
     /**
      * get the targeted path and copy the folder there
      * 
-     * @param subnodeConfig SubnodeConfiguration specifying which folder is in progress
+     * @param context context of the export
+     * @param destinationFolders compiled &lt;destinationFolder&gt; elements of the folder in progress
      * @param fromPath Path from which the copy process should get the original data
      * @param destination Path to which the data should be copied
      * @param folderType String used to control the differences between different folder types
+     * @param linkMode how the files are created in the destination
+     * @param copier FolderCopier that executes the single copies
      * @throws IOException
      */
-    private void getDestPathAndCopyFolder(SubnodeConfiguration subnodeConfig, Path fromPath, Path destination, String folderType,
-            VariableReplacer replacer)
-            throws IOException {
-        // get the values of the subelement <destinationFolder />
-        HashMap<String, String> destFolderMap = getDestFolderMap(subnodeConfig);
-
-        if (destFolderMap.isEmpty()) {
+    private void getDestPathAndCopyFolder(ExportContext context, List<ExportProfile.DestinationFolder> destinationFolders, Path fromPath,
+            Path destination, String folderType, LinkMode linkMode, VariableReplacer replacer, FolderCopier copier) throws IOException {
+        if (destinationFolders.isEmpty()) {
             log.debug("no destinationFolder specified for '" + folderType + "', using default settings instead...");
-            Path toPath = getDefaultDestPathForCopy(fromPath, destination, folderType);
-            copyFolderToDestination(fromPath, toPath, folderType);
+            Path toPath = getDefaultDestPathForCopy(context, fromPath, destination, folderType);
+            copyFolderToDestination(context, fromPath, toPath, folderType, linkMode, copier);
             return;
         }
 
-        // destFolderMap is not empty
-        log.debug("destinationFolder specified for '" + folderType + "' with destFolderMap.size() = " + destFolderMap.size());
+        // destinationFolders is not empty
+        log.debug("destinationFolder specified for '" + folderType + "' with destinationFolders.size() = " + destinationFolders.size());
 
-        for (Map.Entry<String, String> entry : destFolderMap.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            key = replacer.replace(key);
+        // create all destination folders first, the ones with a pattern become the routing rules
+        List<Pattern> patterns = new ArrayList<>(destinationFolders.size());
+        List<Path> toPaths = new ArrayList<>(destinationFolders.size());
+        for (ExportProfile.DestinationFolder destinationFolder : destinationFolders) {
+            String key = replacer.replace(destinationFolder.getName());
+            Pattern pattern = destinationFolder.getPattern();
             // create a folder by the name of key
 
             Path toPath = Paths.get(destination.toString(), key);
-            if (!StorageProvider.getInstance().isFileExists(toPath)) {
-                StorageProvider.getInstance().createDirectories(toPath);
-            }
+            copier.createDirectory(toPath);
 
-            if ("".equals(value)) {
+            if (pattern == null) {
                 log.debug("No pattern specified, '" + key + "' will be left empty.");
                 continue;
             }
 
-            log.debug("Files matching the pattern '" + value + "' should be copied to -> '" + key + "'");
+            log.debug("Files matching the pattern '" + destinationFolder.getExportFileRegex() + "' should be copied to -> '" + key + "'");
+            patterns.add(pattern);
+            toPaths.add(toPath);
+        }
+        if (patterns.isEmpty()) {
+            return;
+        }
 
-            // get a Pattern using value
-            Pattern pattern = Pattern.compile(value);
+        // list the files in fromPath only once
+        List<Path> files = context.getFileSystem().listFiles(fromPath);
+        int routedFiles = routeFiles(files, patterns, toPaths, linkMode, copier);
+        log.debug("Export Plugin - routed " + routedFiles + " copies of " + files.size() + " files in " + fromPath + " to " + patterns.size()
+                + " destination folders");
+    }
 
-            // iterate over the files in fromPath, copy everything whose name matches the Pattern to this new folder
-            List<Path> files = StorageProvider.getInstance().listFiles(fromPath.toString());
-            for (Path file : files) {
-                String fileName = file.getFileName().toString();
-                Matcher matcher = pattern.matcher(fileName);
+    /**
+     * add every file to the copy plan of all destination folders whose Pattern matches its name
+     * 
+     * @param files files of the source folder
+     * @param patterns Patterns of the destination folders
+     * @param toPaths destination folders, in the same order as the patterns
+     * @param linkMode how the files are created in the destination
+     * @param copier FolderCopier that executes the single copies
+     * @return number of planned copies
+     */
+    static int routeFiles(List<Path> files, List<Pattern> patterns, List<Path> toPaths, LinkMode linkMode, FolderCopier copier) {
+        int routedFiles = 0;
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            for (int i = 0; i < patterns.size(); i++) {
+                Matcher matcher = patterns.get(i).matcher(fileName);
                 if (matcher.find()) {
-                    Path newFilePath = toPath.resolve(fileName);
-                    StorageProvider.getInstance().copyFile(file, newFilePath);
+                    copier.copyFile(file, toPaths.get(i).resolve(fileName), linkMode);
+                    routedFiles++;
                 }
             }
         }
+        return routedFiles;
     }
 
     /**
      * get the default targeted path for the copy process
      * 
+     * @param context context of the export
      * @param fromPath Path from which the copy process should get the original data
      * @param destination Path to which the data should be copied
      * @param folderType String used to control the differences between different folder types
      * @return the default targeted path for the copy process
      */
-    private Path getDefaultDestPathForCopy(Path fromPath, Path destination, String folderType) {
+    private Path getDefaultDestPathForCopy(ExportContext context, Path fromPath, Path destination, String folderType) {
+        String processTitle = context.getProcessTitle();
         switch (folderType) {
             case SOURCE_FOLDER:
                 return Paths.get(destination.toString(), processTitle + "_source");
@@ -543,35 +1578,22 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
         }
     }
 
-    /**
-     * go through the configured <destinationFolder> elements and store its attributes' values in a HashMap
-     * 
-     * @param subnodeConfig SubnodeConfiguration specifying which folder is in progress
-     * @return a HashMap with attribute '@name' being its key and '@exportFileRegex' being its value.
-     */
-    private HashMap<String, String> getDestFolderMap(SubnodeConfiguration subnodeConfig) {
-        HashMap<String, String> destFolderMap = new HashMap<>();
-        List<HierarchicalConfiguration> destinationFolderList = subnodeConfig.configurationsAt("./destinationFolder");
-        for (HierarchicalConfiguration destConfig : destinationFolderList) {
-            String name = destConfig.getString("./@name");
-            String exportFileRegex = destConfig.getString("./@exportFileRegex", "");
-            destFolderMap.put(name, exportFileRegex);
-        }
-        return destFolderMap;
-    }
-
     /**
      * copy the folder to the destination
      * 
+     * @param context context of the export
      * @param fromPath Path from which the copy process should get the original data
      * @param toPath Path to which the data should be copied
      * @param folderType String used to control the differences between different folder types
+     * @param linkMode how the files are created in the destination
+     * @param copier FolderCopier that executes the single copies
      * @throws IOException
      */
-    private void copyFolderToDestination(Path fromPath, Path toPath, String folderType) throws IOException {
-        if (StorageProvider.getInstance().isFileExists(fromPath)) {
+    private void copyFolderToDestination(ExportContext context, Path fromPath, Path toPath, String folderType, LinkMode linkMode,
+            FolderCopier copier) throws IOException {
+        if (context.getFileSystem().isFileExists(fromPath)) {
             String debugInfo = getDebugInfo(fromPath, toPath, folderType);
-            StorageProvider.getInstance().copyDirectory(fromPath, toPath, false);
+            copier.copyDirectory(fromPath, toPath, linkMode);
             log.debug(debugInfo);
         }
     }
@@ -618,64 +1640,98 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
     }
 
     /**
-     * perform the copy process for ocr folders
+     * perform the copy process for ocr folders. Every sub folder is copied to its default location or to the destinationFolder of its suffix,
+     * and if an exportFileRegex is configured for the suffix, only the matching files are copied.
      * 
+     * @param context context of the export
      * @param ocrFolder Path of the ocr folder
      * @param destination Path to which the contents in the ocr folder should be copied
+     * @param replacer VariableReplacer for the names of the destination folders
+     * @param copier FolderCopier that executes the single copies
      * @throws IOException
      */
-    private void copyOcrFolderToDestination(Path ocrFolder, Path destination) throws IOException {
-
-        Set<String> ocrSuffixes = new HashSet<>(Arrays.asList(ocrSuffix));
-        List<Path> ocrData = StorageProvider.getInstance().listFiles(ocrFolder.toString());
+    private void copyOcrFolderToDestination(ExportContext context, Path ocrFolder, Path destination, VariableReplacer replacer,
+            FolderCopier copier) throws IOException {
+        ExportProfile profile = context.getProfile();
+        LinkMode linkMode = profile.getLinkMode(OCR_FOLDER);
+        // the many small ocr files are copied next to the images instead of after them
+        copier.setParallelism(ocrFolder, profile.getOcrParallelism());
+        FileSystemView fileSystem = context.getFileSystem();
+        List<Path> ocrData = fileSystem.listFiles(ocrFolder);
 
         for (Path path : ocrData) {
-            String suffix = getOcrPathSuffix(path);
-            Path toPath = getDefaultDestPathForCopy(path, destination, OCR_FOLDER);
-            String debugInfo = getDebugInfo(path, toPath, OCR_FOLDER);
-            if (ocrSuffixes.isEmpty() || ocrSuffixes.contains(suffix)) {
-                if (StorageProvider.getInstance().isDirectory(path)) {
-                    StorageProvider.getInstance().copyDirectory(path, toPath, false);
-                    log.debug(debugInfo);
+            List<ExportProfile.OcrFolder> rules = profile.getOcrFolders(getOcrPathSuffix(path));
+            if (rules.isEmpty()) {
+                continue;
+            }
+            boolean directory = fileSystem.isDirectory(path);
+            // rules with a file filter are routed together, so that the folder is listed only once
+            List<Pattern> patterns = new ArrayList<>();
+            List<Path> toPaths = new ArrayList<>();
+            for (ExportProfile.OcrFolder rule : rules) {
+                Path toPath;
+                if (rule.getDestinationFolder().isEmpty()) {
+                    toPath = getDefaultDestPathForCopy(context, path, destination, OCR_FOLDER);
                 } else {
-                    StorageProvider.getInstance().copyFile(path, toPath);
+                    Path folder = destination.resolve(replacer.replace(rule.getDestinationFolder()));
+                    toPath = directory ? folder : folder.resolve(path.getFileName().toString());
+                }
+                String debugInfo = getDebugInfo(path, toPath, OCR_FOLDER);
+                if (!directory) {
+                    if (rule.getPattern() == null || rule.getPattern().matcher(path.getFileName().toString()).find()) {
+                        copier.copyFile(path, toPath, linkMode);
+                        log.debug(debugInfo);
+                    }
+                } else if (rule.getPattern() == null) {
+                    copier.copyDirectory(path, toPath, linkMode);
                     log.debug(debugInfo);
+                } else {
+                    copier.createDirectory(toPath);
+                    patterns.add(rule.getPattern());
+                    toPaths.add(toPath);
+                    log.debug(debugInfo + ", files matching " + rule.getPattern().pattern());
                 }
             }
+            if (!patterns.isEmpty()) {
+                List<Path> files = fileSystem.listFiles(path);
+                routeFiles(files, patterns, toPaths, linkMode, copier);
+            }
         }
     }
 
     /**
-     * perform the METS / MARC export
+     * find the MARC records for the METS/MARC-Export
      * 
-     * @param digDoc DigitalDocument
-     * @param temporaryFile Path to the temporary METS file
-     * @param destination Path to which the data should be copied
-     * @param filesInFolder files inside of the import directory
+     * @param context context of the export
+     * @param preparedExport the export whose METS file gets the records
+     * @return the found MARC files, all of them are null if no records should be embedded
      * @throws IOException
+     * @throws SwapException
+     * @throws PreferencesException
      */
-    private void performMetsMarcExport(DigitalDocument digDoc, Path temporaryFile, Path destination,
-            List<Path> filesInFolder) throws IOException {
-
-        Path anchorFile = Paths.get(temporaryFile.getParent().toString(), temporaryFile.getFileName().toString().replace(".xml", "_anchor.xml")); //NOSONAR
-        // update MARC files
-        if (embedMarc) {
-            updateMarcFiles(digDoc, temporaryFile, anchorFile, filesInFolder);
+    private MarcFiles findMarcFiles(ExportContext context, PreparedExport preparedExport)
+            throws IOException, SwapException, PreferencesException {
+        if (!context.getProfile().isEmbedMarc()) {
+            return new MarcFiles();
         }
-
-        // Copy temporary MetsFile to Destination and delete temporary file
-        moveTempMetsFileToDestination(temporaryFile, destination, anchorFile);
+        Path importDirectory = Paths.get(context.getProcess().getImportDirectory());
+        // check, if import/xxxx_marc.xml exists
+        FileSystemView fileSystem = context.getFileSystem();
+        if (!fileSystem.isFileExists(importDirectory)) {
+            return new MarcFiles();
+        }
+        List<Path> filesInFolder = fileSystem.listFiles(importDirectory);
+        return getMarcFiles(preparedExport.fileformat.getDigitalDocument(), filesInFolder);
     }
 
     /**
-     * update the MARC file
+     * find the MARC files of the logical DocStruct and of its anchor
      * 
      * @param digDoc DigitalDocument
-     * @param temporaryFile Path to the temporary METS file
-     * @param anchorFile Path to the anchor file
      * @param filesInFolder files inside of the import directory
+     * @return the found MARC files
      */
-    private void updateMarcFiles(DigitalDocument digDoc, Path temporaryFile, Path anchorFile, List<Path> filesInFolder) {
+    private MarcFiles getMarcFiles(DigitalDocument digDoc, List<Path> filesInFolder) {
         DocStruct logical = digDoc.getLogicalDocStruct();
         DocStruct anchor = null;
         if (logical.getType().isAnchor()) {
@@ -706,110 +1762,41 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
             }
         }
 
-        Path sourceMarcFile = null;
-        Path digitalMarcFile = null;
-        Path anchorSourceMarcFile = null;
-        Path anchorDigitalMarcFile = null;
-
+        MarcFiles marcFiles = new MarcFiles();
         for (Path path : filesInFolder) {
             if (path.getFileName().toString().endsWith(idSource + "_marc.xml")) { //NOSONAR
-                sourceMarcFile = path;
+                marcFiles.sourceMarcFile = path;
             } else if (path.getFileName().toString().endsWith(idDigital + "_marc.xml")) {
-                digitalMarcFile = path;
+                marcFiles.digitalMarcFile = path;
             } else if (path.getFileName().toString().endsWith(anchorIdDigital + "_marc.xml")) {
-                anchorDigitalMarcFile = path;
+                marcFiles.anchorDigitalMarcFile = path;
             } else if (path.getFileName().toString().endsWith(anchorIdSource + "_marc.xml")) {
-                anchorSourceMarcFile = path;
+                marcFiles.anchorSourceMarcFile = path;
             }
         }
-
-        // found marc file for monograph/volume
-        if (digitalMarcFile != null || sourceMarcFile != null) {
-            updateXmlFile(sourceMarcFile, digitalMarcFile, temporaryFile);
-        }
-        if (StorageProvider.getInstance().isFileExists(anchorFile) && (anchorSourceMarcFile != null || anchorDigitalMarcFile != null)) {
-            updateXmlFile(anchorSourceMarcFile, anchorDigitalMarcFile, anchorFile);
-        }
+        return marcFiles;
     }
 
     /**
-     * move temporary METS files to the destination
-     * 
-     * @param temporaryFile Path to the temporary METS file, which will be the source
-     * @param exportedMetsFile Path to which this METS file should be copied
-     * @param anchorFile Path to the anchor file
-     * @throws IOException
-     */
-    private void moveTempMetsFileToDestination(Path temporaryFile, Path exportedMetsFile, Path anchorFile) throws IOException {
-        String debugInfo = getDebugInfo(temporaryFile, exportedMetsFile, "temporaryFile");
-        log.debug(debugInfo);
-
-        if (StorageProvider.getInstance().isFileExists(anchorFile)) {
-            Path toPath = Paths.get(exportedMetsFile.getParent().toString(),
-                    exportedMetsFile.getFileName().toString().replace(".xml", "_anchor.xml"));
-            StorageProvider.getInstance().copyFile(anchorFile, toPath);
-            debugInfo = getDebugInfo(anchorFile, toPath, "anchorFile");
-            log.debug(debugInfo);
-            // deleteDir (?)
-            StorageProvider.getInstance().deleteDir(anchorFile);
-            log.debug("Export Plugin - delete file " + anchorFile);
-        }
-    }
-
-    /**
-     * update the XML file
+     * write the XML file with embedded MARC records, the MARC records are embedded in a single streaming pass
      * 
+     * @param context context of the export
      * @param sourceMarcFile
      * @param digitalMarcFile
-     * @param metsFile
-     * @return true if the XML file is successfully updated, false if errors happened
+     * @param metsFile staged METS file
+     * @param exportedFile Path the updated METS file is written to
+     * @return true if the XML file is successfully written, false if errors happened
      */
-    private boolean updateXmlFile(Path sourceMarcFile, Path digitalMarcFile, Path metsFile) {
-        SAXBuilder parser = XmlTools.getSAXBuilder();
+    private boolean updateXmlFile(ExportContext context, Path sourceMarcFile, Path digitalMarcFile, Path metsFile, Path exportedFile) {
         try {
-            Element sourceMarcElement = null;
-            Element digitalMarcElement = null;
-            if (sourceMarcFile != null) {
-                Document marcDoc = parser.build(sourceMarcFile.toString());
-                sourceMarcElement = marcDoc.getRootElement();
-                sourceMarcElement.detach();
-            }
-
-            if (digitalMarcFile != null) {
-                Document marcDoc = parser.build(digitalMarcFile.toString());
-                digitalMarcElement = marcDoc.getRootElement();
-                digitalMarcElement.detach();
-            }
-
-            Document metsDoc = parser.build(metsFile.toString());
-            Element metsElement = metsDoc.getRootElement();
-            Element firstDmdSecElement = metsElement.getChild("dmdSec", METS_NAMESPACE);
-
-            Element mdWrap = new Element("mdWrap", METS_NAMESPACE);
-            mdWrap.setAttribute("MDTYPE", "MARC");
-            firstDmdSecElement.addContent(mdWrap);
-
-            Element xmlData = new Element("xmlData", METS_NAMESPACE);
-            mdWrap.addContent(xmlData);
-            if (digitalMarcFile != null) {
-                digitalMarcElement.setName("marc");
-                xmlData.addContent(digitalMarcElement);
-            }
-            if (sourceMarcElement != null) {
-                sourceMarcElement.setName("marc");
-                xmlData.addContent(sourceMarcElement);
-            }
-
-            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-
-            FileOutputStream output = new FileOutputStream(metsFile.toString());
-            outputter.output(metsDoc, output);
-
-        } catch (JDOMException | IOException e) {
+            long start = System.nanoTime();
+            MarcEmbedder.embed(metsFile, exportedFile, sourceMarcFile, digitalMarcFile);
+            context.getMetrics().record(ExportMetrics.EMBED_MARC, start);
+        } catch (XMLStreamException | IOException e) {
             String message = "Cannot add marc file to process: ";
             Helper.setFehlerMeldung(message + metsFile.toString(), e);
-            Helper.addMessageToProcessJournal(processId, LogType.DEBUG, message);
-            problems.add("Cannot add marc file to process: " + e.getMessage());
+            Helper.addMessageToProcessJournal(context.getProcessId(), LogType.DEBUG, message);
+            context.getProblems().add("Cannot add marc file to process: " + e.getMessage());
             return false;
         }
         return true;
@@ -823,12 +1810,53 @@ public class ConfigurableExportPlugin extends ExportDms implements IExportPlugin
      */
     public String getOcrPathSuffix(Path path) {
         String name = path.getFileName().toString();
-        String suffix = "";
-        String[] suffixSplit = name.split("_");
-        if (suffixSplit != null && suffixSplit.length > 0) {
-            suffix = suffixSplit[suffixSplit.length - 1];
+        // same result as the last element of name.split("_"), which ignores trailing underscores
+        int end = name.length();
+        while (end > 0 && name.charAt(end - 1) == '_') {
+            end--;
+        }
+        return name.substring(name.lastIndexOf('_', end - 1) + 1, end);
+    }
+
+    /**
+     * state of the export of one project between writing the METS file and publishing it in the destination
+     */
+    private static class PreparedExport {
+        private final Project project;
+        private final Path destination;
+        private final Path stagedFile;
+        // folder of this export only, either in the temporary folder or hidden inside of the destination
+        private final Path stagingDirectory;
+        // export wrapper of the project, with its own copy of the DigitalDocument
+        private final Fileformat fileformat;
+        // null if no checksums are recorded
+        private ChecksumManifest checksumManifest;
+        // null if the export cannot be resumed
+        private CopyJournal copyJournal;
+        // true if the MARC records were embedded into the staged files
+        private boolean marcEmbedded;
+
+        PreparedExport(Project project, Path destination, Path stagedFile, Path stagingDirectory, Fileformat fileformat) {
+            this.project = project;
+            this.destination = destination;
+            this.stagedFile = stagedFile;
+            this.stagingDirectory = stagingDirectory;
+            this.fileformat = fileformat;
+        }
+
+        Path getStagedAnchorFile() {
+            return Paths.get(stagedFile.toString().replace(".xml", "_anchor.xml"));
         }
-        return suffix;
     }
 
-}
\ No newline at end of file
+    /**
+     * MARC records of the logical DocStruct and its anchor, each of them can be null
+     */
+    private static class MarcFiles {
+        private Path sourceMarcFile;
+        private Path digitalMarcFile;
+        private Path anchorSourceMarcFile;
+        private Path anchorDigitalMarcFile;
+    }
+
+}
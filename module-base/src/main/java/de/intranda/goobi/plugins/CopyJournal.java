@@ -0,0 +1,179 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Journal of all files that were completely copied into one export destination. Every finished copy is appended to a small local file right
+ * away, together with the size and modification time of its source. If the export is cancelled halfway, e.g. by a restart of Goobi or an
+ * unavailable network share, the next attempt skips all files that were already copied in full and continues where it stopped. The journal
+ * is deleted when the export finished successfully.
+ */
+@Log4j2
+public class CopyJournal implements AutoCloseable {
+
+    private static final String SEPARATOR = "\t";
+
+    private static final String NO_CHECKSUM = "-";
+
+    @Getter
+    private final Path destination;
+
+    @Getter
+    private final Path journalFile;
+
+    // entries of the previous, cancelled attempt
+    private final Map<String, Entry> previousEntries = new ConcurrentHashMap<>();
+
+    private BufferedWriter writer;
+
+    private CopyJournal(Path destination, Path journalFile) {
+        this.destination = destination;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * open the journal of a destination, the entries of a previous attempt are loaded if the journal exists
+     *
+     * @param destination Path of the export destination
+     * @param journalFile Path of the local journal file
+     * @return the journal
+     */
+    public static CopyJournal open(Path destination, Path journalFile) {
+        CopyJournal journal = new CopyJournal(destination, journalFile);
+        if (!Files.isRegularFile(journalFile)) {
+            return journal;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR, 4);
+                // the last line can be incomplete if the previous attempt was killed while writing it
+                if (parts.length == 4) {
+                    String checksum = NO_CHECKSUM.equals(parts[2]) ? null : parts[2];
+                    journal.previousEntries.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), checksum));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Export Plugin - cannot read copy journal " + journalFile + ", all files will be copied", e);
+            journal.previousEntries.clear();
+        }
+        if (!journal.previousEntries.isEmpty()) {
+            log.info("Export Plugin - resuming the export into " + destination + ", " + journal.previousEntries.size()
+                    + " files were already copied");
+        }
+        return journal;
+    }
+
+    /**
+     * check if a path is located inside of the destination of this journal
+     *
+     * @param target Path to check
+     * @return true if the path is inside of the destination
+     */
+    public boolean contains(Path target) {
+        return target.startsWith(destination);
+    }
+
+    /**
+     * check if a previous attempt already copied the source completely. The source must not have changed since, and the target must still
+     * have the size of the source. If the previous attempt recorded a checksum, the target must still have it.
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy
+     * @param algorithm algorithm of the recorded checksums, null if no checksums are created
+     * @return the entry of the previous attempt, or null if the file needs to be copied
+     * @throws IOException
+     */
+    public Entry getCompletedEntry(Path source, Path target, ChecksumManifest.Algorithm algorithm) throws IOException {
+        Entry entry = previousEntries.get(getKey(target));
+        if (entry == null || !Files.isRegularFile(target)) {
+            return null;
+        }
+        long size = Files.size(source);
+        if (entry.size != size || entry.lastModified != Files.getLastModifiedTime(source).toMillis() || Files.size(target) != size) {
+            return null;
+        }
+        if (entry.checksum != null) {
+            // a checksum of another algorithm cannot be verified, the file is copied again then
+            if (algorithm == null || !entry.checksum.equals(ChecksumManifest.createChecksum(target, algorithm))) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * append a completely copied file to the journal
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy
+     * @param checksum checksum of the file, can be null
+     * @throws IOException
+     */
+    public void record(Path source, Path target, String checksum) throws IOException {
+        String line = Files.size(source) + SEPARATOR + Files.getLastModifiedTime(source).toMillis() + SEPARATOR
+                + (checksum == null ? NO_CHECKSUM : checksum) + SEPARATOR + getKey(target);
+        synchronized (this) {
+            if (writer == null) {
+                Files.createDirectories(journalFile.getParent());
+                writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line);
+            writer.newLine();
+            // the entry has to survive a crash of the JVM, a crash of the whole machine can only lose the last entries
+            writer.flush();
+        }
+    }
+
+    /**
+     * delete the journal after the export finished successfully
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private String getKey(Path target) {
+        return destination.relativize(target).toString();
+    }
+
+    /**
+     * a file that was copied completely
+     */
+    public static class Entry {
+        @Getter
+        private final long size;
+        @Getter
+        private final long lastModified;
+        // null if no checksum was recorded
+        @Getter
+        private final String checksum;
+
+        Entry(long size, long lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
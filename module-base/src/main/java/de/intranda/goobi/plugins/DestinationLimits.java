@@ -0,0 +1,196 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Limits of the export destinations, configured by the elements &lt;destinationLimit&gt; of the configuration file. A limit applies to all
+ * destinations below its path and is shared by all exports of the plugin: at most the configured number of exports write into it at the same
+ * time, and all copies into it together do not exceed the configured bandwidth. The limits are read again as soon as the modification time
+ * of the configuration file changes, limits whose settings did not change keep their state.
+ */
+@Log4j2
+public class DestinationLimits {
+
+    private static final DestinationLimits INSTANCE = new DestinationLimits();
+
+    // path -> limit of all destinations below the path
+    private volatile Map<Path, Limit> limits = new HashMap<>();
+
+    private long configLastModified = Long.MIN_VALUE;
+
+    private DestinationLimits() {
+    }
+
+    /**
+     * get the limits of the plugin, read them again if the configuration file changed
+     *
+     * @param configFile Path of the plugin configuration file
+     * @param configReader reads the configuration file, only called if it changed
+     * @return the limits
+     */
+    public static DestinationLimits getInstance(Path configFile, Supplier<HierarchicalConfiguration> configReader) {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(configFile).toMillis();
+        } catch (IOException e) {
+            lastModified = 0L;
+        }
+        synchronized (INSTANCE) {
+            if (lastModified != INSTANCE.configLastModified) {
+                INSTANCE.configure(configReader.get());
+                INSTANCE.configLastModified = lastModified;
+            }
+        }
+        return INSTANCE;
+    }
+
+    private void configure(HierarchicalConfiguration config) {
+        Map<Path, Limit> configured = new HashMap<>();
+        for (HierarchicalConfiguration limitConfig : config.configurationsAt("destinationLimit")) {
+            String path = limitConfig.getString("./@path", "").trim();
+            if (path.isEmpty()) {
+                log.warn("Export Plugin - ignoring destinationLimit without path");
+                continue;
+            }
+            Path root = Paths.get(path).toAbsolutePath().normalize();
+            int writers = Math.max(0, limitConfig.getInt("./@writers", 0));
+            long bytesPerSecond = Math.max(0, limitConfig.getLong("./@megabytesPerSecond", 0)) * 1024 * 1024;
+            Limit limit = limits.get(root);
+            if (limit == null || limit.writers != writers || limit.bytesPerSecond != bytesPerSecond) {
+                limit = new Limit(root, writers, bytesPerSecond);
+                log.debug("Export Plugin - limit for " + root + ": " + (writers > 0 ? writers : "unlimited") + " writers, "
+                        + (bytesPerSecond > 0 ? bytesPerSecond / (1024 * 1024) + " MB/s" : "unlimited bandwidth"));
+            }
+            configured.put(root, limit);
+        }
+        limits = configured;
+    }
+
+    /**
+     * get the limit of a destination
+     *
+     * @param destination Path of the destination or of a file inside of it
+     * @return the limit with the innermost path that contains the destination, or null if the destination is not limited
+     */
+    public Limit getLimit(Path destination) {
+        Map<Path, Limit> current = limits;
+        if (current.isEmpty()) {
+            return null;
+        }
+        Path path = destination.toAbsolutePath().normalize();
+        Limit result = null;
+        for (Limit limit : current.values()) {
+            if (path.startsWith(limit.path) && (result == null || limit.path.startsWith(result.path))) {
+                result = limit;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * wait until the export may write into all given destinations
+     *
+     * @param destinations Paths of all destinations of the export
+     * @return all limits that were acquired, they need to be released by {@link #releaseWriters(List)}
+     * @throws InterruptedException
+     */
+    public List<Limit> acquireWriters(Collection<Path> destinations) throws InterruptedException {
+        // always acquire in the same order, so that exports into several limited destinations cannot block each other
+        Map<Path, Limit> needed = new TreeMap<>();
+        for (Path destination : destinations) {
+            Limit limit = getLimit(destination);
+            if (limit != null && limit.semaphore != null) {
+                needed.put(limit.path, limit);
+            }
+        }
+        List<Limit> acquired = new ArrayList<>(needed.size());
+        try {
+            for (Limit limit : needed.values()) {
+                if (!limit.semaphore.tryAcquire()) {
+                    log.debug("Export Plugin - waiting for one of the " + limit.writers + " writers of " + limit.path);
+                    limit.semaphore.acquire();
+                }
+                acquired.add(limit);
+            }
+        } catch (InterruptedException e) {
+            releaseWriters(acquired);
+            throw e;
+        }
+        return acquired;
+    }
+
+    /**
+     * release the limits that were acquired by {@link #acquireWriters(Collection)}
+     *
+     * @param acquired all acquired limits
+     */
+    public void releaseWriters(List<Limit> acquired) {
+        for (Limit limit : acquired) {
+            limit.semaphore.release();
+        }
+    }
+
+    /**
+     * a single &lt;destinationLimit&gt; element
+     */
+    public static class Limit {
+        @Getter
+        private final Path path;
+        // 0 if the number of writers is not limited
+        @Getter
+        private final int writers;
+        // 0 if the bandwidth is not limited
+        @Getter
+        private final long bytesPerSecond;
+        // null if the number of writers is not limited
+        private final Semaphore semaphore;
+        // time at which all bytes written so far are paid off
+        private long nextFreeNanos = System.nanoTime();
+
+        Limit(Path path, int writers, long bytesPerSecond) {
+            this.path = path;
+            this.writers = writers;
+            this.bytesPerSecond = bytesPerSecond;
+            this.semaphore = writers > 0 ? new Semaphore(writers, true) : null;
+        }
+
+        /**
+         * account for bytes written into the destination, and wait until they fit into the bandwidth
+         *
+         * @param bytes number of written bytes
+         * @throws InterruptedException
+         */
+        public void throttle(long bytes) throws InterruptedException {
+            if (bytesPerSecond <= 0 || bytes <= 0) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                // an idle destination allows a burst of at most one second
+                nextFreeNanos = Math.max(nextFreeNanos, now - TimeUnit.SECONDS.toNanos(1)) + (long) (bytes * 1e9d / bytesPerSecond);
+                waitNanos = nextFreeNanos - now;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+
+import lombok.Getter;
+import ugh.dl.Prefs;
+
+/**
+ * State of a single export of a process. Every call of startExport creates its own context, so that several processes can be exported by the
+ * same plugin instance at the same time without interfering with each other.
+ */
+public class ExportContext {
+
+    @Getter
+    private final Process process;
+
+    @Getter
+    private final Integer processId;
+
+    @Getter
+    private final String processTitle;
+
+    // project of the process before the export, the process is reset to it after each export
+    @Getter
+    private final Project originalProject;
+
+    @Getter
+    private final ExportProfile profile;
+
+    @Getter
+    private final Prefs prefs;
+
+    // problems of this export only, they are handed over to the plugin when the export is finished
+    @Getter
+    private final List<String> problems = new ArrayList<>();
+
+    // duration, files and bytes of every phase of this export
+    @Getter
+    private final ExportMetrics metrics = new ExportMetrics();
+
+    // current phase and copied files of the running export
+    @Getter
+    private final ExportProgress progress;
+
+    // cached file system metadata of the source and destination trees
+    @Getter
+    private final FileSystemView fileSystem = new FileSystemView();
+
+    // bytes written into the destinations by the folder copies
+    @Getter
+    private long copiedBytes;
+
+    /**
+     * create the context of a new export
+     *
+     * @param process process that shall be exported
+     * @param profile compiled configuration of the project of the process
+     */
+    public ExportContext(Process process, ExportProfile profile) {
+        this.process = process;
+        this.processId = process.getId();
+        this.processTitle = process.getTitel();
+        this.originalProject = process.getProjekt();
+        this.profile = profile;
+        this.prefs = process.getRegelsatz().getPreferences();
+        this.progress = new ExportProgress(processId, processTitle);
+    }
+
+    /**
+     * add the bytes of finished folder copies
+     *
+     * @param bytes number of copied bytes
+     */
+    public void addCopiedBytes(long bytes) {
+        copiedBytes += bytes;
+    }
+}
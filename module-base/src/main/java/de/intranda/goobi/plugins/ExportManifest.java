@@ -0,0 +1,232 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Manifest of all files that were copied into one export destination. It is stored as a hidden file in the destination and lists the size,
+ * the modification time, optionally the SHA-256 checksum and the path of the source of each copied file, keyed by the path relative to the
+ * destination. A later export only copies files whose source changed since the last export, and can delete files whose source disappeared.
+ */
+@Log4j2
+public class ExportManifest {
+
+    public static final String MANIFEST_FILE_NAME = ".export-manifest.tsv";
+
+    private static final String SEPARATOR = "\t";
+
+    @Getter
+    private final Path destination;
+
+    private final boolean useChecksum;
+
+    private final boolean deleteRemovedFiles;
+
+    // entries of the previous export
+    private final Map<String, Entry> previousEntries = new ConcurrentHashMap<>();
+
+    // entries of the current export
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+
+    // source folders that are exported this time, only files of these folders can be deleted
+    private final Set<Path> plannedFolders = ConcurrentHashMap.newKeySet();
+
+    private ExportManifest(Path destination, boolean useChecksum, boolean deleteRemovedFiles) {
+        this.destination = destination;
+        this.useChecksum = useChecksum;
+        this.deleteRemovedFiles = deleteRemovedFiles;
+    }
+
+    /**
+     * load the manifest of the previous export into the destination
+     *
+     * @param destination Path of the export destination
+     * @param useChecksum true if the checksums of the source files should be compared instead of their modification times
+     * @param deleteRemovedFiles true if files whose source disappeared should be deleted from the destination
+     * @return the manifest, empty if no previous manifest exists or if it cannot be read
+     */
+    public static ExportManifest load(Path destination, boolean useChecksum, boolean deleteRemovedFiles) {
+        ExportManifest manifest = new ExportManifest(destination, useChecksum, deleteRemovedFiles);
+        Path manifestFile = destination.resolve(MANIFEST_FILE_NAME);
+        if (!Files.isRegularFile(manifestFile)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR, 5);
+                if (parts.length == 5) {
+                    manifest.previousEntries.put(parts[4],
+                            new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], Paths.get(parts[3])));
+                } else if (parts.length == 4) {
+                    // manifests of older versions do not know the source, their files are never deleted
+                    manifest.previousEntries.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], null));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Export Plugin - cannot read export manifest " + manifestFile + ", all files will be copied", e);
+            manifest.previousEntries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * record a source folder that is exported into the destination this time, including all of its sub folders
+     *
+     * @param folder Path of the source folder
+     */
+    public void addSourceFolder(Path folder) {
+        plannedFolders.add(folder.toAbsolutePath());
+    }
+
+    /**
+     * check if the target is already up to date and record the source for the new manifest
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy inside of the destination
+     * @return true if the target was exported from an identical source before and still exists, false if it has to be copied
+     * @throws IOException
+     */
+    public boolean isUnchanged(Path source, Path target) throws IOException {
+        String key = getKey(target);
+        long size = Files.size(source);
+        long lastModified = Files.getLastModifiedTime(source).toMillis();
+        Entry previous = previousEntries.get(key);
+        String checksum = "";
+        if (useChecksum) {
+            checksum = ChecksumManifest.createChecksum(source, ChecksumManifest.Algorithm.SHA256);
+        }
+        Entry current = new Entry(size, lastModified, checksum, source.toAbsolutePath());
+        currentEntries.put(key, current);
+        plannedFolders.add(current.source.getParent());
+        if (previous == null || previous.size != size || !Files.isRegularFile(target) || Files.size(target) != size) {
+            return false;
+        }
+        if (useChecksum) {
+            return checksum.equals(previous.checksum);
+        }
+        return previous.lastModified == lastModified;
+    }
+
+    /**
+     * forget a file that could not be copied, so that it will be copied again by the next export
+     *
+     * @param target Path of the copy inside of the destination
+     */
+    public void remove(Path target) {
+        currentEntries.remove(getKey(target));
+    }
+
+    /**
+     * finish the export into the destination: delete removed files if configured, and write the new manifest
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (deleteRemovedFiles) {
+            int deleted = deleteRemovedFiles();
+            if (deleted > 0) {
+                log.debug("Export Plugin - deleted " + deleted + " files from " + destination + " whose source was removed");
+            }
+        }
+        save();
+    }
+
+    /**
+     * delete all files that were exported before and whose source disappeared since. Files of folders that are not exported this time, e.g.
+     * because they were disabled in the configuration, and files whose source still exists are kept.
+     *
+     * @return the number of deleted files
+     */
+    private int deleteRemovedFiles() {
+        Set<String> removed = new HashSet<>(previousEntries.keySet());
+        removed.removeAll(currentEntries.keySet());
+        int deleted = 0;
+        for (String key : removed) {
+            Path source = previousEntries.get(key).source;
+            if (source == null || !isPlanned(source) || Files.exists(source)) {
+                continue;
+            }
+            Path file = destination.resolve(key);
+            try {
+                if (Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            } catch (IOException e) {
+                log.warn("Export Plugin - cannot delete removed file " + file, e);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * write the manifest of the current export into the destination
+     *
+     * @throws IOException
+     */
+    private void save() throws IOException {
+        Path manifestFile = destination.resolve(MANIFEST_FILE_NAME);
+        Path temporaryFile = destination.resolve(MANIFEST_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(currentEntries).entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.size + SEPARATOR + value.lastModified + SEPARATOR + value.checksum + SEPARATOR + value.source + SEPARATOR
+                        + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * check if a path is located inside of the destination of this manifest
+     *
+     * @param target Path to check
+     * @return true if the path is inside of the destination
+     */
+    public boolean contains(Path target) {
+        return target.startsWith(destination);
+    }
+
+    private boolean isPlanned(Path source) {
+        for (Path folder : plannedFolders) {
+            if (source.startsWith(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getKey(Path target) {
+        return destination.relativize(target).toString();
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String checksum;
+        // absolute path of the source, null for manifests of older versions
+        private final Path source;
+
+        Entry(long size, long lastModified, String checksum, Path source) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.source = source;
+        }
+    }
+}
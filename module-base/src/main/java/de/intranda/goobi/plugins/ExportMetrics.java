@@ -0,0 +1,125 @@
+package de.intranda.goobi.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Duration, number of files and number of bytes of every phase of a single export, e.g. reading the metadata file, writing the METS file,
+ * validating or copying the folders of a folder type. Phases that run several times, e.g. for several targets, are summed up.
+ */
+public class ExportMetrics {
+
+    static final String READ_METADATA = "readMetadata";
+    static final String WRITE_METS = "writeMets";
+    static final String TRIM_METADATA = "trimMetadata";
+    static final String VALIDATE = "validate";
+    static final String PLAN_FOLDERS = "planFolders";
+    static final String COPY_FOLDERS = "copyFolders";
+    static final String COPY_PREFIX = "copy:";
+    static final String EMBED_MARC = "embedMarc";
+    static final String PUBLISH_METS = "publishMets";
+    static final String PACKAGE = "package";
+    static final String TOTAL = "total";
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    /**
+     * record a phase that ends now
+     *
+     * @param phase name of the phase
+     * @param startNanos System.nanoTime() at the start of the phase
+     */
+    public void record(String phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos, 0, 0);
+    }
+
+    /**
+     * record a phase that ends now
+     *
+     * @param phase name of the phase
+     * @param startNanos System.nanoTime() at the start of the phase
+     * @param files number of files handled by the phase
+     * @param bytes number of bytes handled by the phase
+     */
+    public void record(String phase, long startNanos, long files, long bytes) {
+        add(phase, System.nanoTime() - startNanos, files, bytes);
+    }
+
+    /**
+     * add a measurement to a phase
+     *
+     * @param phase name of the phase
+     * @param durationNanos duration in nanoseconds
+     * @param files number of files handled by the phase
+     * @param bytes number of bytes handled by the phase
+     */
+    public synchronized void add(String phase, long durationNanos, long files, long bytes) {
+        Phase entry = phases.computeIfAbsent(phase, k -> new Phase());
+        entry.count++;
+        entry.durationNanos += durationNanos;
+        entry.files += files;
+        entry.bytes += bytes;
+    }
+
+    /**
+     * get all recorded phases
+     *
+     * @return copy of all phases in the order they were recorded first
+     */
+    public synchronized Map<String, Phase> getPhases() {
+        Map<String, Phase> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * get a one line summary of all phases, e.g. for the process journal
+     *
+     * @return the summary
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(' ').append(phase.durationNanos / 1000000).append(" ms");
+            if (phase.files > 0) {
+                sb.append(" / ").append(phase.files).append(" files");
+            }
+            if (phase.bytes > 0) {
+                sb.append(String.format(" / %.1f MB", phase.bytes / (1024d * 1024d)));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * measurements of a single phase
+     */
+    public static class Phase {
+        // number of times the phase was recorded
+        @Getter
+        private long count;
+        @Getter
+        private long durationNanos;
+        @Getter
+        private long files;
+        @Getter
+        private long bytes;
+
+        private Phase copy() {
+            Phase copy = new Phase();
+            copy.count = count;
+            copy.durationNanos = durationNanos;
+            copy.files = files;
+            copy.bytes = bytes;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+
+import lombok.Getter;
+
+/**
+ * Immutable, pre-compiled view of one &lt;config&gt; block of the plugin configuration. All values that are needed during an export are read
+ * from the XML tree once, so that an export does not need to evaluate any XPath expression or compile any regular expression.
+ */
+public class ExportProfile {
+
+    static final String FOLDERS_PARENT_ELEMENT = "includeFolders";
+    static final String ENABLED_PROPERTY = "/@enabled";
+
+    // copy every ocr folder to its default location
+    private static final List<OcrFolder> DEFAULT_OCR_FOLDERS = Collections.singletonList(new OcrFolder("", "", ""));
+
+    private static final List<String> FOLDER_TYPES = Arrays.asList(ConfigurableExportPlugin.MEDIA_FOLDER, ConfigurableExportPlugin.MASTER_FOLDER,
+            ConfigurableExportPlugin.OCR_FOLDER, ConfigurableExportPlugin.SOURCE_FOLDER, ConfigurableExportPlugin.IMPORT_FOLDER,
+            ConfigurableExportPlugin.EXPORT_FOLDER, ConfigurableExportPlugin.ITM_FOLDER, ConfigurableExportPlugin.VALIDATION_FOLDER);
+
+    @Getter
+    private final boolean embedMarc;
+    // stage the METS file inside of the destination and publish it by an atomic rename
+    @Getter
+    private final boolean writeMetsToDestination;
+    // keep METS and anchor files in the destination whose content did not change
+    @Getter
+    private final boolean skipUnchangedMets;
+    // write a single archive file instead of a directory tree, null if the configured packaging is not supported
+    @Getter
+    private final Packaging packaging;
+    @Getter
+    private final String configuredPackaging;
+    @Getter
+    private final boolean includeDerivate;
+    @Getter
+    private final boolean includeMaster;
+    @Getter
+    private final boolean includeOcr;
+    @Getter
+    private final boolean includeSource;
+    @Getter
+    private final boolean includeImport;
+    @Getter
+    private final boolean includeExport;
+    @Getter
+    private final boolean includeITM;
+    @Getter
+    private final boolean includeValidation;
+    // suffix -> all &lt;sourceFolderSuffix&gt; elements of this suffix, empty if all ocr folders are exported by default
+    private final Map<String, List<OcrFolder>> ocrFolders;
+    // maximum number of ocr files that are copied at the same time
+    @Getter
+    private final int ocrParallelism;
+    // maximum number of files that are copied at the same time
+    @Getter
+    private final int parallelism;
+    // how the folders are written into the destinations of further targets after the first one
+    @Getter
+    private final LinkMode fanOut;
+    // algorithm of the checksum manifest, null if no checksums should be recorded
+    @Getter
+    private final ChecksumManifest.Algorithm checksumAlgorithm;
+    @Getter
+    private final boolean verifyChecksums;
+    // only copy files whose source changed since the last export
+    @Getter
+    private final boolean incrementalExport;
+    @Getter
+    private final boolean incrementalDeleteRemoved;
+    @Getter
+    private final boolean incrementalChecksum;
+    // journal the copied files, so that a cancelled export can continue where it stopped
+    @Getter
+    private final boolean resumableExport;
+    // copy the folders while the METS file is written and validated
+    @Getter
+    private final boolean pipelinedExport;
+    // copy the files by FileChannel.transferTo instead of the StorageProvider
+    @Getter
+    private final boolean channelTransfer;
+    @Getter
+    private final int transferChunkSize;
+    @Getter
+    private final boolean transferPreallocate;
+    @Getter
+    private final FileTransfer.SyncMode transferSync;
+    @Getter
+    private final int transferSyncBatchSize;
+    @Getter
+    private final List<TargetRule> targets;
+    // true if at least one <target> element misses one of its mandatory attributes
+    @Getter
+    private final boolean targetsMalformed;
+    @Getter
+    private final List<GenericFolder> genericFolders;
+
+    private final Map<String, List<DestinationFolder>> destinationFolders;
+
+    // how the files of each folder type are created in the destination
+    private final Map<String, LinkMode> linkModes;
+
+    private ExportProfile(SubnodeConfiguration config) {
+        embedMarc = config.getBoolean("./includeMarcXml", false);
+        writeMetsToDestination = config.getBoolean("./writeMetsToDestination", false);
+        skipUnchangedMets = config.getBoolean("./skipUnchangedMets", false);
+        configuredPackaging = config.getString("./packaging", "");
+        packaging = Packaging.getByName(configuredPackaging);
+
+        List<TargetRule> targetList = new ArrayList<>();
+        boolean malformed = false;
+        for (HierarchicalConfiguration targetConfig : config.configurationsAt("./target")) {
+            String key = targetConfig.getString("./@key");
+            String value = targetConfig.getString("./@value");
+            String regex = targetConfig.getString("./@matches");
+            String values = targetConfig.getString("./@in");
+            boolean empty = targetConfig.getBoolean("./@empty", false);
+            String projectName = targetConfig.getString("./@projectName");
+            // exactly one condition is needed
+            int conditions = (value == null ? 0 : 1) + (regex == null ? 0 : 1) + (values == null ? 0 : 1) + (empty ? 1 : 0);
+            if (key == null || conditions != 1 || projectName == null) {
+                malformed = true;
+                continue;
+            }
+            try {
+                targetList.add(new TargetRule(key, value, regex, values, projectName.trim()));
+            } catch (PatternSyntaxException e) {
+                malformed = true;
+            }
+        }
+        targets = Collections.unmodifiableList(targetList);
+        targetsMalformed = malformed;
+
+        incrementalExport = config.getBoolean("./incrementalExport/@enabled", false);
+        incrementalDeleteRemoved = config.getBoolean("./incrementalExport/@deleteRemovedFiles", false);
+        incrementalChecksum = config.getBoolean("./incrementalExport/@checksum", false);
+        resumableExport = config.getBoolean("./resumableExport/@enabled", false);
+        pipelinedExport = config.getBoolean("./pipelinedExport/@enabled", false);
+
+        channelTransfer = "channel".equalsIgnoreCase(config.getString("./fileTransfer/@backend", ""));
+        transferChunkSize = Math.max(1, config.getInt("./fileTransfer/@chunkSize", 64));
+        transferPreallocate = config.getBoolean("./fileTransfer/@preallocate", false);
+        transferSync = FileTransfer.SyncMode.getByName(config.getString("./fileTransfer/@sync", ""));
+        transferSyncBatchSize = Math.max(1, config.getInt("./fileTransfer/@syncBatchSize", 100));
+
+        SubnodeConfiguration foldersConfig = config.configurationAt(FOLDERS_PARENT_ELEMENT);
+        parallelism = Math.max(1, foldersConfig.getInt("./@parallelism", 1));
+        fanOut = LinkMode.getByName(foldersConfig.getString("./@fanOut", ""));
+        checksumAlgorithm = ChecksumManifest.Algorithm.getByName(foldersConfig.getString("./@checksum", ""));
+        verifyChecksums = foldersConfig.getBoolean("./@verifyChecksums", false);
+        includeDerivate = foldersConfig.getBoolean(ConfigurableExportPlugin.MEDIA_FOLDER + ENABLED_PROPERTY, false);
+        includeMaster = foldersConfig.getBoolean(ConfigurableExportPlugin.MASTER_FOLDER + ENABLED_PROPERTY, false);
+        includeOcr = foldersConfig.getBoolean(ConfigurableExportPlugin.OCR_FOLDER + ENABLED_PROPERTY, false);
+        includeSource = foldersConfig.getBoolean(ConfigurableExportPlugin.SOURCE_FOLDER + ENABLED_PROPERTY, false);
+        includeImport = foldersConfig.getBoolean(ConfigurableExportPlugin.IMPORT_FOLDER + ENABLED_PROPERTY, false);
+        includeExport = foldersConfig.getBoolean(ConfigurableExportPlugin.EXPORT_FOLDER + ENABLED_PROPERTY, false);
+        includeITM = foldersConfig.getBoolean(ConfigurableExportPlugin.ITM_FOLDER + ENABLED_PROPERTY, false);
+        includeValidation = foldersConfig.getBoolean(ConfigurableExportPlugin.VALIDATION_FOLDER + ENABLED_PROPERTY, false);
+        Map<String, List<OcrFolder>> ocrFolderMap = new HashMap<>();
+        for (HierarchicalConfiguration suffixConfig : foldersConfig.configurationsAt(ConfigurableExportPlugin.OCR_FOLDER + "/sourceFolderSuffix")) {
+            OcrFolder ocrFolder = new OcrFolder(suffixConfig.getString(".", "").trim(), suffixConfig.getString("./@destinationFolder", "").trim(),
+                    suffixConfig.getString("./@exportFileRegex", ""));
+            ocrFolderMap.computeIfAbsent(ocrFolder.getSuffix(), k -> new ArrayList<>()).add(ocrFolder);
+        }
+        ocrFolders = Collections.unmodifiableMap(ocrFolderMap);
+        ocrParallelism = Math.max(1, foldersConfig.getInt(ConfigurableExportPlugin.OCR_FOLDER + "/@parallelism", parallelism));
+
+        Map<String, List<DestinationFolder>> folderMap = new HashMap<>();
+        Map<String, LinkMode> linkModeMap = new HashMap<>();
+        for (String folderType : FOLDER_TYPES) {
+            linkModeMap.put(folderType, LinkMode.getByName(foldersConfig.getString(folderType + "/@linkMode", "")));
+            if (foldersConfig.configurationsAt(folderType).isEmpty()) {
+                folderMap.put(folderType, Collections.emptyList());
+            } else {
+                folderMap.put(folderType, readDestinationFolders(foldersConfig.configurationAt(folderType)));
+            }
+        }
+        destinationFolders = Collections.unmodifiableMap(folderMap);
+        linkModes = Collections.unmodifiableMap(linkModeMap);
+
+        String[] imageFolders = foldersConfig.getStringArray(ConfigurableExportPlugin.GENERIC_FOLDER);
+        List<HierarchicalConfiguration> genericFolderConfigNodes = foldersConfig.configurationsAt(ConfigurableExportPlugin.GENERIC_FOLDER);
+        List<GenericFolder> genericList = new ArrayList<>();
+        for (int i = 0; i < imageFolders.length; ++i) {
+            HierarchicalConfiguration genericFolderConfig = genericFolderConfigNodes.get(i);
+            LinkMode linkMode = LinkMode.getByName(genericFolderConfig.getString("./@linkMode", ""));
+            genericList.add(new GenericFolder(imageFolders[i], readDestinationFolders(genericFolderConfig), linkMode));
+        }
+        genericFolders = Collections.unmodifiableList(genericList);
+    }
+
+    /**
+     * compile the given configuration block into an export profile
+     *
+     * @param config SubnodeConfiguration of the &lt;config&gt; block
+     * @return the compiled ExportProfile
+     */
+    public static ExportProfile compile(SubnodeConfiguration config) {
+        return new ExportProfile(config);
+    }
+
+    /**
+     * get the configured &lt;destinationFolder&gt; elements of a folder type
+     *
+     * @param folderType one of the folder types configured inside of &lt;includeFolders&gt;
+     * @return an unmodifiable list of destination folders in configuration order, empty if none is configured
+     */
+    public List<DestinationFolder> getDestinationFolders(String folderType) {
+        List<DestinationFolder> folders = destinationFolders.get(folderType);
+        return folders == null ? Collections.emptyList() : folders;
+    }
+
+    /**
+     * get the configured &lt;sourceFolderSuffix&gt; elements of an ocr suffix
+     *
+     * @param suffix suffix of an ocr folder
+     * @return the elements of the suffix, a single default element if no suffix is configured, or an empty list if the folder is not exported
+     */
+    public List<OcrFolder> getOcrFolders(String suffix) {
+        if (ocrFolders.isEmpty()) {
+            return DEFAULT_OCR_FOLDERS;
+        }
+        return ocrFolders.getOrDefault(suffix, Collections.emptyList());
+    }
+
+    /**
+     * evaluate all &lt;target&gt; rules, every distinct key is resolved only once
+     *
+     * @param resolver resolves a key, e.g. by the VariableReplacer of the process
+     * @return the rules whose condition is met, in configuration order
+     */
+    public List<TargetRule> matchTargets(UnaryOperator<String> resolver) {
+        List<TargetRule> result = new ArrayList<>();
+        // many targets usually share the same key
+        Map<String, String> resolvedKeys = new HashMap<>();
+        for (TargetRule target : targets) {
+            String resolved;
+            if (resolvedKeys.containsKey(target.getKey())) {
+                resolved = resolvedKeys.get(target.getKey());
+            } else {
+                resolved = resolver.apply(target.getKey());
+                resolvedKeys.put(target.getKey(), resolved);
+            }
+            if (target.matches(resolved)) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * create a new FileTransfer with the configured settings, every export needs its own one
+     *
+     * @return a new FileTransfer
+     */
+    public FileTransfer createFileTransfer() {
+        return new FileTransfer(channelTransfer, transferChunkSize, transferPreallocate, transferSync, transferSyncBatchSize);
+    }
+
+    /**
+     * get the configured link mode of a folder type
+     *
+     * @param folderType one of the folder types configured inside of &lt;includeFolders&gt;
+     * @return the LinkMode of the folder type, COPY if none is configured
+     */
+    public LinkMode getLinkMode(String folderType) {
+        return linkModes.getOrDefault(folderType, LinkMode.COPY);
+    }
+
+    /**
+     * go through the configured &lt;destinationFolder&gt; elements and compile them
+     *
+     * @param subnodeConfig configuration of the folder in progress
+     * @return an unmodifiable list of destination folders, later entries with the same name replace earlier ones
+     */
+    private static List<DestinationFolder> readDestinationFolders(HierarchicalConfiguration subnodeConfig) {
+        Map<String, DestinationFolder> destFolderMap = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        for (HierarchicalConfiguration destConfig : subnodeConfig.configurationsAt("./destinationFolder")) {
+            String name = destConfig.getString("./@name");
+            String exportFileRegex = destConfig.getString("./@exportFileRegex", "");
+            if (destFolderMap.put(name, new DestinationFolder(name, exportFileRegex)) == null) {
+                order.add(name);
+            }
+        }
+        List<DestinationFolder> result = new ArrayList<>();
+        for (String name : order) {
+            result.add(destFolderMap.get(name));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * a single &lt;target&gt; rule with its compiled condition
+     */
+    public static class TargetRule {
+        @Getter
+        private final String key;
+        // expected value, null if another condition is used
+        @Getter
+        private final String value;
+        // null if no regular expression is used
+        @Getter
+        private final Pattern pattern;
+        // null if no list of values is used
+        @Getter
+        private final Set<String> values;
+        // blank if the project of the process should be used
+        @Getter
+        private final String projectName;
+
+        TargetRule(String key, String value, String regex, String valueList, String projectName) {
+            this.key = key;
+            this.value = value;
+            this.pattern = regex == null ? null : Pattern.compile(regex);
+            if (valueList == null) {
+                this.values = null;
+            } else {
+                Set<String> set = new HashSet<>();
+                for (String entry : valueList.split(",")) {
+                    set.add(entry.trim());
+                }
+                this.values = Collections.unmodifiableSet(set);
+            }
+            this.projectName = projectName;
+        }
+
+        /**
+         * check the condition of the rule
+         *
+         * @param resolvedKey resolved value of the key, can be null
+         * @return true if the condition is met
+         */
+        public boolean matches(String resolvedKey) {
+            if (value != null) {
+                return value.equals(resolvedKey);
+            }
+            if (pattern != null) {
+                return resolvedKey != null && pattern.matcher(resolvedKey).matches();
+            }
+            if (values != null) {
+                return resolvedKey != null && values.contains(resolvedKey.trim());
+            }
+            // empty="true"
+            return resolvedKey == null || resolvedKey.isBlank();
+        }
+    }
+
+    /**
+     * a single &lt;destinationFolder&gt; element with its pre-compiled regular expression
+     */
+    public static class DestinationFolder {
+        @Getter
+        private final String name;
+        @Getter
+        private final String exportFileRegex;
+        // null if no regular expression is configured, the folder will then be left empty
+        @Getter
+        private final Pattern pattern;
+
+        DestinationFolder(String name, String exportFileRegex) {
+            this.name = name;
+            this.exportFileRegex = exportFileRegex;
+            this.pattern = exportFileRegex.isEmpty() ? null : Pattern.compile(exportFileRegex);
+        }
+    }
+
+    /**
+     * a single &lt;sourceFolderSuffix&gt; element of the ocr folder
+     */
+    public static class OcrFolder {
+        @Getter
+        private final String suffix;
+        // blank if the ocr folder is copied to its default location
+        @Getter
+        private final String destinationFolder;
+        // null if all files of the ocr folder are copied
+        @Getter
+        private final Pattern pattern;
+
+        OcrFolder(String suffix, String destinationFolder, String exportFileRegex) {
+            this.suffix = suffix;
+            this.destinationFolder = destinationFolder;
+            this.pattern = exportFileRegex.isEmpty() ? null : Pattern.compile(exportFileRegex);
+        }
+    }
+
+    /**
+     * a single &lt;genericFolder&gt; element
+     */
+    public static class GenericFolder {
+        @Getter
+        private final String name;
+        @Getter
+        private final List<DestinationFolder> destinationFolders;
+        @Getter
+        private final LinkMode linkMode;
+
+        GenericFolder(String name, List<DestinationFolder> destinationFolders, LinkMode linkMode) {
+            this.name = name;
+            this.destinationFolders = destinationFolders;
+            this.linkMode = linkMode;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache of compiled export profiles, keyed by project title. The whole cache is dropped as soon as the modification time of the plugin
+ * configuration file changes, so that changes in the configuration still take effect without a restart. The cached projects of the target
+ * rules are dropped at the same time.
+ */
+@Log4j2
+public class ExportProfileCache {
+
+    // guarded by itself
+    private static final Map<String, ExportProfile> PROFILES = new HashMap<>();
+
+    private static long configLastModified = Long.MIN_VALUE;
+
+    private ExportProfileCache() {
+        // static access only
+    }
+
+    /**
+     * get the cached profile of a project, compile it if it is not cached yet or if the configuration file changed
+     *
+     * @param configFile Path of the plugin configuration file
+     * @param projectName title of the project
+     * @param compiler function that reads and compiles the profile of a project
+     * @return the ExportProfile of the project
+     */
+    public static ExportProfile getProfile(Path configFile, String projectName, Function<String, ExportProfile> compiler) {
+        long lastModified = getLastModified(configFile);
+        synchronized (PROFILES) {
+            if (lastModified != configLastModified) {
+                if (!PROFILES.isEmpty()) {
+                    log.debug("Export Plugin - configuration file changed, dropping " + PROFILES.size() + " cached profiles");
+                }
+                PROFILES.clear();
+                ProjectCache.invalidate();
+                configLastModified = lastModified;
+            }
+            // compiled under the same lock, so that a profile of the old configuration cannot be stored after the cache was dropped
+            return PROFILES.computeIfAbsent(projectName, compiler);
+        }
+    }
+
+    /**
+     * drop all cached profiles and projects
+     */
+    public static void invalidate() {
+        synchronized (PROFILES) {
+            PROFILES.clear();
+            ProjectCache.invalidate();
+            configLastModified = Long.MIN_VALUE;
+        }
+    }
+
+    private static long getLastModified(Path configFile) {
+        try {
+            return Files.getLastModifiedTime(configFile).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
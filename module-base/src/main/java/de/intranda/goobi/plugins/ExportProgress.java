@@ -0,0 +1,270 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Progress of a running export: the current phase, and the files and bytes of every folder type that are done compared to the copy plan.
+ * The copies only add to a few counters, the throughput and the remaining time are computed when the progress is polled. Polls are answered
+ * from the last snapshot if it is younger than one second, so that a user interface can poll as often as it likes.
+ */
+public class ExportProgress {
+
+    private static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // weight of the latest measurement in the smoothed throughput
+    private static final double THROUGHPUT_WEIGHT = 0.3d;
+
+    // process id -> progress of all running exports
+    private static final Map<Integer, ExportProgress> RUNNING_EXPORTS = new ConcurrentHashMap<>();
+
+    @Getter
+    private final int processId;
+
+    @Getter
+    private final String processTitle;
+
+    private final long startNanos = System.nanoTime();
+
+    @Getter
+    private volatile String phase = "";
+
+    // folder type -> progress, in the order the folder types were planned
+    private final Map<String, FolderProgress> folders = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private Snapshot lastSnapshot;
+
+    // bytes per second, smoothed over the snapshots
+    private double throughput;
+
+    /**
+     * create the progress of a new export
+     *
+     * @param processId id of the exported process
+     * @param processTitle title of the exported process
+     */
+    public ExportProgress(int processId, String processTitle) {
+        this.processId = processId;
+        this.processTitle = processTitle;
+    }
+
+    /**
+     * publish the progress of a running export
+     *
+     * @param progress progress of the export
+     */
+    public static void register(ExportProgress progress) {
+        RUNNING_EXPORTS.put(progress.processId, progress);
+    }
+
+    /**
+     * remove the progress of a finished export
+     *
+     * @param progress progress of the export
+     */
+    public static void unregister(ExportProgress progress) {
+        RUNNING_EXPORTS.remove(progress.processId, progress);
+    }
+
+    /**
+     * get the progress of a running export
+     *
+     * @param processId id of the process
+     * @return the progress, or null if the process is not exported at the moment
+     */
+    public static Snapshot getSnapshot(int processId) {
+        ExportProgress progress = RUNNING_EXPORTS.get(processId);
+        return progress == null ? null : progress.getSnapshot();
+    }
+
+    /**
+     * get the progress of all running exports
+     *
+     * @return the progress of every running export
+     */
+    public static List<Snapshot> getSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (ExportProgress progress : RUNNING_EXPORTS.values()) {
+            snapshots.add(progress.getSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * set the phase the export is in
+     *
+     * @param phase name of the phase, e.g. one of the phases of the ExportMetrics
+     */
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * get the progress of a folder type, it is created on the first call
+     *
+     * @param folderType folder type, e.g. media or master
+     * @return the progress of the folder type
+     */
+    public FolderProgress getFolder(String folderType) {
+        return folders.computeIfAbsent(folderType, k -> new FolderProgress());
+    }
+
+    /**
+     * get the current progress, at most once per second it is computed again
+     *
+     * @return the progress
+     */
+    public synchronized Snapshot getSnapshot() {
+        long now = System.nanoTime();
+        if (lastSnapshot != null && now - lastSnapshot.nanos < SNAPSHOT_INTERVAL_NANOS) {
+            return lastSnapshot;
+        }
+        Snapshot snapshot = new Snapshot(this, now);
+        synchronized (folders) {
+            for (Map.Entry<String, FolderProgress> entry : folders.entrySet()) {
+                FolderProgress folder = entry.getValue().copy();
+                snapshot.folders.put(entry.getKey(), folder);
+                snapshot.plannedFiles += folder.getPlannedFiles();
+                snapshot.plannedBytes += folder.getPlannedBytes();
+                snapshot.doneFiles += folder.getDoneFiles();
+                snapshot.doneBytes += folder.getDoneBytes();
+            }
+        }
+        long previousNanos = lastSnapshot == null ? startNanos : lastSnapshot.nanos;
+        long previousBytes = lastSnapshot == null ? 0 : lastSnapshot.doneBytes;
+        double current = (snapshot.doneBytes - previousBytes) * 1e9d / Math.max(1, now - previousNanos);
+        throughput = lastSnapshot == null ? current : THROUGHPUT_WEIGHT * current + (1 - THROUGHPUT_WEIGHT) * throughput;
+        snapshot.bytesPerSecond = (long) throughput;
+        long remainingBytes = snapshot.plannedBytes - snapshot.doneBytes;
+        if (remainingBytes <= 0) {
+            snapshot.remainingSeconds = 0;
+        } else if (snapshot.bytesPerSecond > 0) {
+            snapshot.remainingSeconds = remainingBytes / snapshot.bytesPerSecond;
+        }
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * planned and finished copies of a single folder type
+     */
+    public static class FolderProgress {
+        private final AtomicLong plannedFiles = new AtomicLong();
+        private final AtomicLong plannedBytes = new AtomicLong();
+        private final AtomicLong doneFiles = new AtomicLong();
+        private final AtomicLong doneBytes = new AtomicLong();
+
+        /**
+         * add copies to the plan
+         *
+         * @param files number of planned copies
+         * @param bytes bytes of the planned copies
+         */
+        public void plan(long files, long bytes) {
+            plannedFiles.addAndGet(files);
+            plannedBytes.addAndGet(bytes);
+        }
+
+        /**
+         * count finished copies, no matter if they were written, linked, skipped or failed
+         *
+         * @param files number of finished copies
+         * @param bytes bytes of the finished copies
+         */
+        public void done(long files, long bytes) {
+            doneFiles.addAndGet(files);
+            doneBytes.addAndGet(bytes);
+        }
+
+        /**
+         * get the number of planned copies
+         *
+         * @return number of planned copies
+         */
+        public long getPlannedFiles() {
+            return plannedFiles.get();
+        }
+
+        /**
+         * get the bytes of the planned copies
+         *
+         * @return bytes of the planned copies
+         */
+        public long getPlannedBytes() {
+            return plannedBytes.get();
+        }
+
+        /**
+         * get the number of finished copies
+         *
+         * @return number of finished copies
+         */
+        public long getDoneFiles() {
+            return doneFiles.get();
+        }
+
+        /**
+         * get the bytes of the finished copies
+         *
+         * @return bytes of the finished copies
+         */
+        public long getDoneBytes() {
+            return doneBytes.get();
+        }
+
+        private FolderProgress copy() {
+            FolderProgress copy = new FolderProgress();
+            copy.plan(getPlannedFiles(), getPlannedBytes());
+            copy.done(getDoneFiles(), getDoneBytes());
+            return copy;
+        }
+    }
+
+    /**
+     * progress of an export at a single point in time
+     */
+    public static class Snapshot {
+        private final long nanos;
+        @Getter
+        private final int processId;
+        @Getter
+        private final String processTitle;
+        @Getter
+        private final String phase;
+        @Getter
+        private final long elapsedMillis;
+        // folder type -> progress
+        @Getter
+        private final Map<String, FolderProgress> folders = new LinkedHashMap<>();
+        @Getter
+        private long plannedFiles;
+        @Getter
+        private long plannedBytes;
+        @Getter
+        private long doneFiles;
+        @Getter
+        private long doneBytes;
+        // smoothed throughput of the copies
+        @Getter
+        private long bytesPerSecond;
+        // -1 if the remaining time is not known yet
+        @Getter
+        private long remainingSeconds = -1;
+
+        private Snapshot(ExportProgress progress, long nanos) {
+            this.nanos = nanos;
+            this.processId = progress.processId;
+            this.processTitle = progress.processTitle;
+            this.phase = progress.phase;
+            this.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(nanos - progress.startNanos);
+        }
+    }
+}
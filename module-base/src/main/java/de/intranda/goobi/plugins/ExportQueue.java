@@ -0,0 +1,219 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Persistent queue of asynchronous exports. Every export is stored as a small job file in the queue folder before it is handed to the worker
+ * pool, and the job file is deleted when the export finished. Exports that were still queued or running when Goobi stopped are started again
+ * as soon as the queue is created the next time.
+ */
+@Log4j2
+public class ExportQueue {
+
+    private static final String JOB_SUFFIX = ".job";
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static ExportQueue instance;
+
+    // settings of the configuration file with the modification time configLastModified
+    private static long configLastModified = Long.MIN_VALUE;
+    private static boolean configEnabled;
+    private static int configWorkers;
+    private static int configCapacity;
+
+    @Getter
+    private final Path folder;
+
+    @Getter
+    private final int workers;
+
+    // maximum number of exports that wait for a worker
+    @Getter
+    private final int capacity;
+
+    // runs the export of a process id, returns true if it succeeded
+    private final IntPredicate exporter;
+
+    private final ExecutorService executor;
+
+    // processes that wait for a worker
+    private final Set<Integer> waitingProcesses = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ExportQueue(Path folder, int workers, int capacity, IntPredicate exporter) {
+        this.folder = folder;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.exporter = exporter;
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "configurable-export-queue-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * get the queue of the plugin, it is created and the jobs of a previous run are started again on the first call
+     *
+     * @param folder Path of the folder with the job files
+     * @param workers number of exports that run at the same time
+     * @param capacity maximum number of exports that wait for a worker
+     * @param exporter runs the export of a process id and returns true if it succeeded
+     * @return the queue
+     * @throws IOException if the queue folder cannot be read
+     */
+    public static synchronized ExportQueue getInstance(Path folder, int workers, int capacity, IntPredicate exporter) throws IOException {
+        if (instance == null) {
+            ExportQueue queue = new ExportQueue(folder, Math.max(1, workers), Math.max(1, capacity), exporter);
+            queue.recover();
+            instance = queue;
+        } else if (!instance.folder.equals(folder) || instance.workers != Math.max(1, workers) || instance.capacity != Math.max(1, capacity)) {
+            // replacing the queue could run the recovered jobs twice
+            log.warn("Export Plugin - the changed settings of the export queue take effect after a restart of Goobi");
+        }
+        return instance;
+    }
+
+    /**
+     * get the queue of the plugin if the asynchronous export is enabled by the element &lt;asyncExport&gt; of the configuration file. The
+     * settings are only read again when the modification time of the configuration file changes.
+     *
+     * @param configFile Path of the plugin configuration file
+     * @param folder Path of the folder with the job files
+     * @param configReader reads the configuration file, only called if it changed
+     * @param exporter runs the export of a process id and returns true if it succeeded
+     * @return the queue, or null if the processes should be exported directly
+     * @throws IOException if the queue folder cannot be read
+     */
+    public static synchronized ExportQueue getConfigured(Path configFile, Path folder, Supplier<HierarchicalConfiguration> configReader,
+            IntPredicate exporter) throws IOException {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(configFile).toMillis();
+        } catch (IOException e) {
+            lastModified = 0L;
+        }
+        if (lastModified != configLastModified) {
+            HierarchicalConfiguration config = configReader.get();
+            configEnabled = config.getBoolean("asyncExport/@enabled", false);
+            configWorkers = config.getInt("asyncExport/@workers", 2);
+            configCapacity = config.getInt("asyncExport/@capacity", 1000);
+            configLastModified = lastModified;
+        }
+        if (!configEnabled) {
+            return null;
+        }
+        return getInstance(folder, configWorkers, configCapacity, exporter);
+    }
+
+    /**
+     * add the export of a process to the queue
+     *
+     * @param processId id of the process
+     * @return true if the export is queued or already waiting, false if the queue is full
+     * @throws IOException if the job file cannot be written
+     */
+    public boolean enqueue(int processId) throws IOException {
+        if (!waitingProcesses.add(processId)) {
+            log.debug("Export Plugin - export of process " + processId + " is already queued");
+            return true;
+        }
+        if (waitingProcesses.size() > capacity) {
+            waitingProcesses.remove(processId);
+            return false;
+        }
+        Path jobFile;
+        try {
+            Files.createDirectories(folder);
+            // the name keeps the order of the jobs when they are recovered
+            String name = String.format("%013d-%06d-%d", System.currentTimeMillis(), sequence.incrementAndGet() % 1000000, processId);
+            Path temporaryFile = folder.resolve("." + name + ".tmp");
+            Files.write(temporaryFile, String.valueOf(processId).getBytes(StandardCharsets.UTF_8));
+            jobFile = Files.move(temporaryFile, folder.resolve(name + JOB_SUFFIX));
+        } catch (IOException e) {
+            waitingProcesses.remove(processId);
+            throw e;
+        }
+        submit(jobFile, processId);
+        return true;
+    }
+
+    /**
+     * get the number of exports that wait for a worker
+     *
+     * @return number of waiting exports
+     */
+    public int getWaitingExports() {
+        return waitingProcesses.size();
+    }
+
+    private void recover() throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        List<Path> jobFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + JOB_SUFFIX)) {
+            for (Path jobFile : stream) {
+                jobFiles.add(jobFile);
+            }
+        }
+        Collections.sort(jobFiles);
+        for (Path jobFile : jobFiles) {
+            String name = jobFile.getFileName().toString();
+            try {
+                int processId = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - JOB_SUFFIX.length()));
+                if (waitingProcesses.add(processId)) {
+                    submit(jobFile, processId);
+                } else {
+                    Files.delete(jobFile);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Export Plugin - ignoring invalid job file " + jobFile);
+            }
+        }
+        if (!jobFiles.isEmpty()) {
+            log.info("Export Plugin - restarting " + waitingProcesses.size() + " queued exports of a previous run");
+        }
+    }
+
+    private void submit(Path jobFile, int processId) {
+        executor.submit(() -> {
+            // an export that is queued again while this one runs gets its own job
+            waitingProcesses.remove(processId);
+            try {
+                boolean success = exporter.test(processId);
+                log.debug("Export Plugin - queued export of process " + processId + (success ? " finished" : " failed"));
+            } catch (RuntimeException e) {
+                log.error("Export Plugin - queued export of process " + processId + " failed", e);
+            } finally {
+                try {
+                    Files.deleteIfExists(jobFile);
+                } catch (IOException e) {
+                    log.warn("Export Plugin - cannot delete job file " + jobFile, e);
+                }
+            }
+        });
+    }
+}
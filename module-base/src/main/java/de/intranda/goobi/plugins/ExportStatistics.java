@@ -0,0 +1,177 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Statistics of all exports since the plugin was loaded. The metrics of every finished export are added, and the sums are published as JMX
+ * MXBean on the platform MBean server of the Goobi JVM.
+ */
+@Log4j2
+public class ExportStatistics implements ExportStatisticsMXBean {
+
+    static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=ConfigurableExport";
+
+    private static final long[] BUCKETS_MILLIS = { 10, 50, 100, 500, 1000, 5000, 10000, 60000, 300000 };
+
+    private static final ExportStatistics INSTANCE = new ExportStatistics();
+
+    static {
+        INSTANCE.register();
+    }
+
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong failedExports = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<String, PhaseStatistics> phases = new ConcurrentHashMap<>();
+
+    private ExportStatistics() {
+    }
+
+    /**
+     * get the statistics of this plugin
+     *
+     * @return the registered statistics
+     */
+    public static ExportStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * add the metrics of a finished export
+     *
+     * @param metrics metrics of the export
+     * @param success true if the export succeeded
+     */
+    public void add(ExportMetrics metrics, boolean success) {
+        exports.incrementAndGet();
+        if (!success) {
+            failedExports.incrementAndGet();
+        }
+        for (Map.Entry<String, ExportMetrics.Phase> entry : metrics.getPhases().entrySet()) {
+            ExportMetrics.Phase phase = entry.getValue();
+            if (entry.getKey().startsWith(ExportMetrics.COPY_PREFIX) || ExportMetrics.PACKAGE.equals(entry.getKey())) {
+                // the copy phases of the folder types and the package contain all copied files
+                files.addAndGet(phase.getFiles());
+                bytes.addAndGet(phase.getBytes());
+            }
+            phases.computeIfAbsent(entry.getKey(), k -> new PhaseStatistics()).add(phase.getDurationNanos() / 1000000);
+        }
+    }
+
+    @Override
+    public long getExports() {
+        return exports.get();
+    }
+
+    @Override
+    public long getFailedExports() {
+        return failedExports.get();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        phases.forEach((name, phase) -> result.put(name, phase.count.get()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTotalMillis() {
+        Map<String, Long> result = new TreeMap<>();
+        phases.forEach((name, phase) -> result.put(name, phase.totalMillis.get()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMaxMillis() {
+        Map<String, Long> result = new TreeMap<>();
+        phases.forEach((name, phase) -> result.put(name, phase.maxMillis.get()));
+        return result;
+    }
+
+    @Override
+    public long[] getHistogramBucketsMillis() {
+        return BUCKETS_MILLIS.clone();
+    }
+
+    @Override
+    public Map<String, long[]> getPhaseHistograms() {
+        Map<String, long[]> result = new TreeMap<>();
+        phases.forEach((name, phase) -> {
+            long[] histogram = new long[BUCKETS_MILLIS.length + 1];
+            long sum = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                sum += phase.buckets.get(i);
+                histogram[i] = sum;
+            }
+            result.put(name, histogram);
+        });
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        exports.set(0);
+        failedExports.set(0);
+        files.set(0);
+        bytes.set(0);
+        phases.clear();
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a reloaded plugin replaces the statistics of its previous class loader
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException | RuntimeException e) {
+            log.warn("Export Plugin - cannot register the export statistics as " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * durations of a single phase
+     */
+    private static class PhaseStatistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MILLIS.length + 1);
+
+        void add(long millis) {
+            count.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+            int bucket = 0;
+            while (bucket < BUCKETS_MILLIS.length && millis > BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+    }
+}
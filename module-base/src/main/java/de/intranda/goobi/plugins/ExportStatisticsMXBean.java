@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+
+/**
+ * JMX view of the statistics of all exports since the plugin was loaded, registered as de.intranda.goobi.plugins:type=ConfigurableExport. The
+ * values can be scraped by any JMX based monitoring, e.g. the Prometheus JMX exporter.
+ */
+public interface ExportStatisticsMXBean {
+
+    /**
+     * get the number of finished exports
+     *
+     * @return number of exports
+     */
+    long getExports();
+
+    /**
+     * get the number of failed exports
+     *
+     * @return number of failed exports
+     */
+    long getFailedExports();
+
+    /**
+     * get the number of files handled by all exports
+     *
+     * @return number of files
+     */
+    long getFiles();
+
+    /**
+     * get the number of bytes handled by all exports
+     *
+     * @return number of bytes
+     */
+    long getBytes();
+
+    /**
+     * get how often each phase was recorded
+     *
+     * @return phase name -&gt; count
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * get the summed up duration of each phase
+     *
+     * @return phase name -&gt; milliseconds
+     */
+    Map<String, Long> getPhaseTotalMillis();
+
+    /**
+     * get the longest duration of each phase
+     *
+     * @return phase name -&gt; milliseconds
+     */
+    Map<String, Long> getPhaseMaxMillis();
+
+    /**
+     * get the upper bounds of the histogram buckets, the last bucket has no upper bound
+     *
+     * @return upper bounds in milliseconds
+     */
+    long[] getHistogramBucketsMillis();
+
+    /**
+     * get the duration histogram of each phase, bucket i counts all durations up to the i-th upper bound, the last bucket counts all
+     *
+     * @return phase name -&gt; cumulative bucket counts
+     */
+    Map<String, long[]> getPhaseHistograms();
+
+    /**
+     * reset all statistics
+     */
+    void reset();
+}
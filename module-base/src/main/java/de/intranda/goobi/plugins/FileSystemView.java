@@ -0,0 +1,213 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+
+/**
+ * File system metadata of the source and destination trees of a single export. Every path is looked up at most once through the
+ * StorageProvider, folder listings are kept, and all files of a listed folder are known to exist without looking them up. On the local file
+ * system, the existence and the type of a path are read by a single call. The writes of the export itself update or drop the affected
+ * entries, changes by others during the export are not seen.
+ */
+public class FileSystemView {
+
+    private enum State {
+        MISSING,
+        FILE,
+        DIRECTORY
+    }
+
+    private final Map<Path, State> states = new ConcurrentHashMap<>();
+
+    private final Map<Path, List<Path>> listings = new ConcurrentHashMap<>();
+
+    // files of all listed folders
+    private final Set<Path> listedFiles = ConcurrentHashMap.newKeySet();
+
+    // calls that reached the file system
+    private final AtomicInteger metadataOperations = new AtomicInteger();
+
+    // calls that were answered without reaching the file system
+    private final AtomicInteger cachedResults = new AtomicInteger();
+
+    /**
+     * check if a file or folder exists
+     *
+     * @param path Path to check
+     * @return true if the path exists
+     */
+    public boolean isFileExists(Path path) {
+        if (!states.containsKey(path) && listedFiles.contains(path)) {
+            cachedResults.incrementAndGet();
+            return true;
+        }
+        return getState(path) != State.MISSING;
+    }
+
+    /**
+     * check if a path is a folder
+     *
+     * @param path Path to check
+     * @return true if the path exists and is a folder
+     */
+    public boolean isDirectory(Path path) {
+        return getState(path) == State.DIRECTORY;
+    }
+
+    /**
+     * list the contents of a folder
+     *
+     * @param folder Path of the folder
+     * @return the contents of the folder as returned by the StorageProvider, the list must not be changed
+     */
+    public List<Path> listFiles(Path folder) {
+        List<Path> files = listings.get(folder);
+        if (files != null) {
+            cachedResults.incrementAndGet();
+            return files;
+        }
+        metadataOperations.incrementAndGet();
+        files = Collections.unmodifiableList(StorageProvider.getInstance().listFiles(folder.toString()));
+        listings.put(folder, files);
+        listedFiles.addAll(files);
+        return files;
+    }
+
+    /**
+     * create a folder and all missing parent folders, nothing happens if the folder is already known to exist
+     *
+     * @param directory Path of the folder
+     * @throws IOException
+     */
+    public void createDirectories(Path directory) throws IOException {
+        if (states.get(directory) == State.DIRECTORY) {
+            cachedResults.incrementAndGet();
+            return;
+        }
+        metadataOperations.incrementAndGet();
+        StorageProvider.getInstance().createDirectories(directory);
+        for (Path folder = directory; folder != null && states.put(folder, State.DIRECTORY) != State.DIRECTORY; folder = folder.getParent()) {
+            dropListing(folder.getParent());
+        }
+    }
+
+    /**
+     * create the folders of a copy plan. Folders that are created together with one of their sub folders are not created on their own.
+     *
+     * @param directories Paths of all folders
+     * @throws IOException
+     */
+    public void createDirectories(Set<Path> directories) throws IOException {
+        Set<Path> parents = new HashSet<>();
+        for (Path directory : directories) {
+            // all parents of the folder are created with it
+            Path parent = directory.getParent();
+            while (parent != null && parents.add(parent)) {
+                parent = parent.getParent();
+            }
+        }
+        for (Path directory : directories) {
+            if (!parents.contains(directory)) {
+                createDirectories(directory);
+            }
+        }
+    }
+
+    /**
+     * forget a path after the export created, changed or deleted it
+     *
+     * @param path Path that was written
+     */
+    public void invalidate(Path path) {
+        states.remove(path);
+        listedFiles.remove(path);
+        listings.remove(path);
+        dropListing(path.getParent());
+    }
+
+    /**
+     * get the number of lookups that reached the file system
+     *
+     * @return number of metadata operations
+     */
+    public int getMetadataOperations() {
+        return metadataOperations.get();
+    }
+
+    /**
+     * get the number of lookups that were answered from the view
+     *
+     * @return number of cached results
+     */
+    public int getCachedResults() {
+        return cachedResults.get();
+    }
+
+    /**
+     * get a short summary of the lookups
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        int operations = getMetadataOperations();
+        int cached = getCachedResults();
+        return operations + " file system metadata operations, " + cached + " of " + (operations + cached) + " lookups answered from the cache";
+    }
+
+    /**
+     * check if the StorageProvider works on the local file system, so that paths can be read by NIO directly
+     *
+     * @return true if the StorageProvider is the local NIO implementation
+     */
+    static boolean isLocalStorage() {
+        return StorageProvider.getInstance() instanceof NIOFileUtils;
+    }
+
+    private State getState(Path path) {
+        State state = states.get(path);
+        if (state != null) {
+            cachedResults.incrementAndGet();
+            return state;
+        }
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        if (!(storage instanceof NIOFileUtils)) {
+            // e.g. S3, the paths only exist for the StorageProvider
+            metadataOperations.addAndGet(2);
+            state = storage.isDirectory(path) ? State.DIRECTORY : storage.isFileExists(path) ? State.FILE : State.MISSING;
+            states.put(path, state);
+            return state;
+        }
+        metadataOperations.incrementAndGet();
+        try {
+            // existence and type are read by a single call, links are followed like by the StorageProvider
+            state = Files.readAttributes(path, BasicFileAttributes.class).isDirectory() ? State.DIRECTORY : State.FILE;
+        } catch (NoSuchFileException e) {
+            state = State.MISSING;
+        } catch (IOException e) {
+            // e.g. missing permissions, the result is not kept
+            return State.MISSING;
+        }
+        states.put(path, state);
+        return state;
+    }
+
+    private void dropListing(Path folder) {
+        if (folder != null) {
+            listings.remove(folder);
+        }
+    }
+}
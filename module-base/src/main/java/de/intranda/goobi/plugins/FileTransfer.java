@@ -0,0 +1,208 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Copies single files into the export destination. By default the files are copied by the StorageProvider. The channel backend transfers the
+ * bytes with FileChannel.transferTo instead, which lets the operating system copy the data without passing it through the Java heap, e.g.
+ * by sendfile or copy_file_range on Linux. Written files can be synced to the disk after each file or in batches.
+ */
+@Log4j2
+public class FileTransfer {
+
+    /**
+     * when the written files are synced to the disk
+     */
+    public enum SyncMode {
+        /**
+         * leave it to the operating system
+         */
+        NONE,
+        /**
+         * sync every file right after it was written
+         */
+        FILE,
+        /**
+         * sync the written files in batches
+         */
+        BATCH;
+
+        /**
+         * get the SyncMode by its configured name
+         *
+         * @param name configured value, case insensitive
+         * @return the matching SyncMode, NONE if the name is empty or unknown
+         */
+        public static SyncMode getByName(String name) {
+            if (name != null) {
+                for (SyncMode mode : values()) {
+                    if (mode.name().equalsIgnoreCase(name.trim())) {
+                        return mode;
+                    }
+                }
+            }
+            return NONE;
+        }
+    }
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    // true if FileChannel.transferTo is used instead of the StorageProvider
+    @Getter
+    private final boolean useChannels;
+
+    // maximum number of bytes that are transferred by a single call
+    @Getter
+    private final long chunkSize;
+
+    // true if the length of the target is set before the data is transferred, this does not reserve any disk space
+    @Getter
+    private final boolean preallocate;
+
+    @Getter
+    private final SyncMode syncMode;
+
+    @Getter
+    private final int syncBatchSize;
+
+    // files that are written but not synced yet
+    private final List<Path> unsyncedFiles = new ArrayList<>();
+
+    /**
+     * create a file transfer that copies by the StorageProvider
+     */
+    public FileTransfer() {
+        this(false, 64, false, SyncMode.NONE, 0);
+    }
+
+    /**
+     * create a new file transfer
+     *
+     * @param useChannels true if FileChannel.transferTo should be used instead of the StorageProvider
+     * @param chunkSizeMb maximum number of megabytes that are transferred by a single call
+     * @param preallocate true if the length of the target should be set before the data is transferred
+     * @param syncMode when the written files are synced to the disk
+     * @param syncBatchSize number of files that are synced together, if the sync mode is BATCH
+     */
+    public FileTransfer(boolean useChannels, int chunkSizeMb, boolean preallocate, SyncMode syncMode, int syncBatchSize) {
+        this.useChannels = useChannels;
+        this.chunkSize = Math.max(1, chunkSizeMb) * MEGABYTE;
+        this.preallocate = preallocate;
+        this.syncMode = syncMode;
+        this.syncBatchSize = Math.max(1, syncBatchSize);
+    }
+
+    /**
+     * copy a single file, an existing target is replaced
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy
+     * @throws IOException
+     */
+    public void copy(Path source, Path target) throws IOException {
+        if (useChannels && FileSystemView.isLocalStorage()) {
+            // a single file is already synced by the transfer itself
+            transfer(source, target);
+            if (syncMode == SyncMode.BATCH) {
+                written(target);
+            }
+        } else {
+            StorageProvider.getInstance().copyFile(source, target);
+            written(target);
+        }
+    }
+
+    /**
+     * register a file that was written by other means than this transfer, so that it is synced like the copied files
+     *
+     * @param target Path of the written file
+     * @throws IOException
+     */
+    public void written(Path target) throws IOException {
+        if (syncMode == SyncMode.FILE) {
+            sync(target);
+        } else if (syncMode == SyncMode.BATCH) {
+            List<Path> batch = null;
+            synchronized (unsyncedFiles) {
+                unsyncedFiles.add(target);
+                if (unsyncedFiles.size() >= syncBatchSize) {
+                    batch = new ArrayList<>(unsyncedFiles);
+                    unsyncedFiles.clear();
+                }
+            }
+            if (batch != null) {
+                syncAll(batch);
+            }
+        }
+    }
+
+    /**
+     * sync all files that are written but not synced yet
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        List<Path> batch;
+        synchronized (unsyncedFiles) {
+            batch = new ArrayList<>(unsyncedFiles);
+            unsyncedFiles.clear();
+        }
+        syncAll(batch);
+    }
+
+    private void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (preallocate && size > 0) {
+                // there is no portable fallocate, writing the last byte only sets the length, most file systems create a sparse file
+                out.write(ByteBuffer.allocate(1), size - 1);
+            }
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, Math.min(chunkSize, size - position), out);
+                if (transferred <= 0) {
+                    throw new IOException("Cannot transfer " + source + " to " + target + ", stopped at byte " + position + " of " + size);
+                }
+                position += transferred;
+            }
+            if (syncMode == SyncMode.FILE) {
+                out.force(true);
+            }
+        } catch (IOException e) {
+            // do not leave a partial target behind, with preallocate it would even have the size of the source
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+    }
+
+    private void syncAll(List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (Path file : files) {
+            sync(file);
+        }
+        log.debug("Export Plugin - synced " + files.size() + " files in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
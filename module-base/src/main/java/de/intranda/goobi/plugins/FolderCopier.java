@@ -0,0 +1,1206 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Collects all copies of an export into a plan and executes them afterwards. Copies of the same source file into several destinations, e.g.
+ * for several matching targets, are grouped, so that every source file is only read once: the additional destinations are either written from
+ * the same stream or linked to the first copy, depending on the configured fan out mode. Each copy can also be linked to the source file
+ * directly, depending on the link mode of its folder.
+ *
+ * With a parallelism of 1 every copy is executed in the calling thread, with a higher parallelism the single files are fanned out across a
+ * bounded thread pool. In both cases all failures are collected and returned by {@link #execute()}.
+ */
+@Log4j2
+public class FolderCopier implements AutoCloseable {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @Getter
+    private final int parallelism;
+
+    @Getter
+    private final LinkMode fanOut;
+
+    @Getter
+    private final FileTransfer transfer;
+
+    private final ExecutorService executor;
+
+    // planned source folder -> its own parallelism, if it differs from the parallelism of the copier
+    private final Map<Path, Integer> folderParallelism = new HashMap<>();
+
+    // parallelism -> thread pool of the folders with their own parallelism
+    private final Map<Integer, ExecutorService> folderExecutors = new HashMap<>();
+
+    private final Set<Path> directories = new LinkedHashSet<>();
+
+    // source file -> all destinations of this file with their link mode
+    private final Map<Path, Map<Path, LinkMode>> plan = new LinkedHashMap<>();
+
+    // source file -> the planned folder it belongs to, used for the throughput statistics
+    private final Map<Path, Path> sourceFolders = new HashMap<>();
+
+    // throughput statistics of each planned folder
+    private final Map<Path, FolderStatistics> statistics = new ConcurrentHashMap<>();
+
+    // planned source folder -> its folder type, used to add the statistics to the metrics of the export
+    private final Map<Path, String> folderTypes = new HashMap<>();
+
+    // metrics of the export, can be null
+    private ExportMetrics metrics;
+
+    // bandwidth limits of the destinations, can be null
+    private DestinationLimits limits;
+
+    // creates the planned folders, can be null
+    private FileSystemView fileSystem;
+
+    // progress of the export, can be null
+    private ExportProgress progress;
+
+    // source file -> progress of its folder type, filled when the execution starts
+    private final Map<Path, ExportProgress.FolderProgress> sourceProgress = new HashMap<>();
+
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    // manifests of all destinations that are exported incrementally
+    private final List<ExportManifest> manifests = new ArrayList<>();
+
+    // checksum manifests of all destinations, the checksums are computed while the files are copied
+    private final List<ChecksumManifest> checksumManifests = new ArrayList<>();
+
+    // copy journals of all destinations that can be resumed
+    private final List<CopyJournal> journals = new ArrayList<>();
+
+    // source file -> its size, if it was already known when the file was planned
+    private final Map<Path, Long> sourceSizes = new HashMap<>();
+
+    private ChecksumManifest.Algorithm checksumAlgorithm;
+
+    private boolean verifyChecksums;
+
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+
+    private final AtomicInteger resumedFiles = new AtomicInteger();
+
+    // bytes of all planned copies, known once the execution started
+    @Getter
+    private long plannedBytes;
+
+    // bytes written into all destinations, linked files are not counted
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    // files copied or linked into all destinations, unchanged and resumed files are not counted
+    private final AtomicInteger writtenFiles = new AtomicInteger();
+
+    // folder of the written files -> number of written files, so that the files of a single destination can be counted
+    private final Map<Path, AtomicInteger> writtenFolders = new ConcurrentHashMap<>();
+
+    // true once the running execution was cancelled, pooled copies that did not start yet are skipped
+    private volatile boolean cancelled;
+
+    // pooled copies that are running at the moment
+    private final AtomicInteger activeCopies = new AtomicInteger();
+
+    // files and folders that did not exist before they were written, null if they are not tracked
+    private List<Path> createdPaths;
+
+    // incremental manifests that are finished by commit()
+    private final List<ExportManifest> pendingManifests = new ArrayList<>();
+
+    /**
+     * create a new copier
+     *
+     * @param parallelism maximum number of files that are copied at the same time
+     * @param fanOut how additional destinations of the same source file are created
+     */
+    public FolderCopier(int parallelism, LinkMode fanOut) {
+        this(parallelism, fanOut, new FileTransfer());
+    }
+
+    /**
+     * create a new copier
+     *
+     * @param parallelism maximum number of files that are copied at the same time
+     * @param fanOut how additional destinations of the same source file are created
+     * @param transfer how the single files are copied
+     */
+    public FolderCopier(int parallelism, LinkMode fanOut, FileTransfer transfer) {
+        this.parallelism = Math.max(1, parallelism);
+        this.fanOut = fanOut;
+        this.transfer = transfer;
+        executor = createExecutor(this.parallelism);
+    }
+
+    private static ExecutorService createExecutor(int parallelism) {
+        if (parallelism <= 1) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "configurable-export-copy-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * add a single file to the plan
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy
+     */
+    public void copyFile(Path source, Path target) {
+        copyFile(source, target, LinkMode.COPY);
+    }
+
+    /**
+     * add a single file to the plan
+     *
+     * @param source Path of the original file
+     * @param target Path of the copy
+     * @param linkMode how the target is created from the source, if linking fails the file is copied
+     */
+    public void copyFile(Path source, Path target, LinkMode linkMode) {
+        plan.computeIfAbsent(source, k -> new LinkedHashMap<>()).put(target, linkMode);
+        sourceFolders.putIfAbsent(source, source.toAbsolutePath().getParent());
+    }
+
+    /**
+     * add a folder including all sub folders to the plan
+     *
+     * @param source Path of the original folder
+     * @param target Path of the copied folder
+     * @throws IOException if the source folder cannot be read
+     */
+    public void copyDirectory(Path source, Path target) throws IOException {
+        copyDirectory(source, target, LinkMode.COPY);
+    }
+
+    /**
+     * add a folder including all sub folders to the plan
+     *
+     * @param source Path of the original folder
+     * @param target Path of the copied folder
+     * @param linkMode how the files are created from the source files, if linking fails the files are copied
+     * @throws IOException if the source folder cannot be read
+     */
+    public void copyDirectory(Path source, Path target, LinkMode linkMode) throws IOException {
+        ExportManifest manifest = getManifest(target);
+        if (manifest != null) {
+            manifest.addSourceFolder(source);
+        }
+        if (!useNio(linkMode)) {
+            if (!StorageProvider.getInstance().isFileExists(source)) {
+                throw new NoSuchFileException(source.toString());
+            }
+            planDirectory(source.toAbsolutePath(), source, target, linkMode);
+            return;
+        }
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(source) && isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.add(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isHidden(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                // files of sub folders count for the copied folder
+                sourceFolders.putIfAbsent(file, source.toAbsolutePath());
+                sourceSizes.put(file, attrs.size());
+                copyFile(file, target.resolve(source.relativize(file).toString()), linkMode);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * add a folder including all sub folders to the plan, the folders are listed by the StorageProvider
+     *
+     * @param root Path of the copied folder, files of sub folders count for it
+     * @param folder Path of the current folder
+     * @param target Path of the copy of the current folder
+     * @param linkMode how the files are created from the source files
+     */
+    /**
+     * check if a file is hidden. The StorageProvider does not list hidden files, so they are skipped by both ways of planning a folder.
+     *
+     * @param file Path of the file
+     * @return true if the name of the file starts with a dot
+     */
+    private static boolean isHidden(Path file) {
+        return file.getFileName().toString().startsWith(".");
+    }
+
+    private void planDirectory(Path root, Path folder, Path target, LinkMode linkMode) {
+        directories.add(target);
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        for (Path file : storage.listFiles(folder.toString())) {
+            Path copy = target.resolve(file.getFileName().toString());
+            if (storage.isDirectory(file)) {
+                planDirectory(root, file, copy, linkMode);
+            } else {
+                sourceFolders.putIfAbsent(file, root);
+                copyFile(file, copy, linkMode);
+            }
+        }
+    }
+
+    /**
+     * add an empty folder to the plan, it is created before any file is copied
+     *
+     * @param target Path of the folder
+     */
+    public void createDirectory(Path target) {
+        directories.add(target);
+    }
+
+    /**
+     * add the throughput statistics of all copied folders to the metrics of an export
+     *
+     * @param metrics metrics of the export
+     */
+    public void setMetrics(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * keep the copies into limited destinations within the bandwidth of the destination
+     *
+     * @param limits limits of the destinations
+     */
+    public void setLimits(DestinationLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * create the planned folders through the file system view of the export, so that known folders are not created again
+     *
+     * @param fileSystem file system view of the export
+     */
+    public void setFileSystem(FileSystemView fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * remember the files and folders that did not exist before they were written, so that they can be removed by {@link #rollback()}. The
+     * incremental manifests are not finished by {@link #execute()} then, but by {@link #commit()}.
+     *
+     * @param enabled true if the copies should be tracked
+     */
+    public void setRollback(boolean enabled) {
+        createdPaths = enabled ? Collections.synchronizedList(new ArrayList<>()) : null;
+    }
+
+    /**
+     * keep all copies of the last execution and finish the incremental manifests
+     *
+     * @throws IOException if a manifest cannot be written
+     */
+    public void commit() throws IOException {
+        for (ExportManifest manifest : pendingManifests) {
+            manifest.finish();
+        }
+        pendingManifests.clear();
+        if (createdPaths != null) {
+            createdPaths.clear();
+        }
+    }
+
+    /**
+     * remove all files and folders that were created by the last execution, files that existed before are kept. The incremental manifests
+     * of the previous export are kept.
+     */
+    public void rollback() {
+        pendingManifests.clear();
+        if (createdPaths == null) {
+            return;
+        }
+        List<Path> paths;
+        synchronized (createdPaths) {
+            paths = new ArrayList<>(createdPaths);
+            createdPaths.clear();
+        }
+        // deepest paths first, so that every folder is empty when it is removed
+        paths.sort((a, b) -> Integer.compare(b.getNameCount(), a.getNameCount()));
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        int removed = 0;
+        for (Path path : paths) {
+            try {
+                if (!storage.isDirectory(path)) {
+                    storage.deleteFile(path);
+                    removed++;
+                } else if (storage.listFiles(path.toString()).isEmpty()) {
+                    storage.deleteDir(path);
+                    removed++;
+                }
+            } catch (IOException e) {
+                log.warn("Export Plugin - cannot remove " + path + " of the cancelled copy", e);
+            }
+        }
+        log.info("Export Plugin - removed " + removed + " files and folders of the cancelled copy");
+    }
+
+    /**
+     * count the planned and finished copies of every folder type in the progress of the export
+     *
+     * @param progress progress of the export
+     */
+    public void setProgress(ExportProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * set the folder type of a planned source folder, its copies are added to the metrics as phase of this type
+     *
+     * @param folder Path of the source folder, sub folders belong to the same type
+     * @param folderType folder type, e.g. media or master
+     */
+    public void setFolderType(Path folder, String folderType) {
+        folderTypes.put(folder.toAbsolutePath(), folderType);
+    }
+
+    /**
+     * copy the files of a planned source folder with their own parallelism, e.g. to copy many small files next to a few large ones. The
+     * files of the folder are copied at the same time as the files of all other folders.
+     *
+     * @param folder Path of the source folder, sub folders use the same parallelism
+     * @param parallelism maximum number of files of the folder that are copied at the same time
+     */
+    public void setParallelism(Path folder, int parallelism) {
+        if (Math.max(1, parallelism) != this.parallelism) {
+            folderParallelism.put(folder.toAbsolutePath(), Math.max(1, parallelism));
+        }
+    }
+
+    /**
+     * export into the destination of the manifest incrementally, i.e. skip all files whose source did not change since the last export
+     *
+     * @param manifest manifest of the previous export into the destination
+     */
+    public void addManifest(ExportManifest manifest) {
+        manifests.add(manifest);
+    }
+
+    /**
+     * journal all files that are completely copied into the destination of the journal, and skip the files that a previous attempt already
+     * copied completely
+     *
+     * @param journal copy journal of the destination
+     */
+    public void addJournal(CopyJournal journal) {
+        journals.add(journal);
+    }
+
+    /**
+     * record the checksums of all files that are copied into the destination of the manifest
+     *
+     * @param manifest checksum manifest of the destination, all manifests of a copier must use the same algorithm
+     * @param verify true if the written files should be read again and compared to the recorded checksums
+     */
+    public void addChecksumManifest(ChecksumManifest manifest, boolean verify) {
+        checksumManifests.add(manifest);
+        checksumAlgorithm = manifest.getAlgorithm();
+        verifyChecksums = verifyChecksums || verify;
+    }
+
+    /**
+     * get the number of planned source files
+     *
+     * @return number of source files in the plan
+     */
+    public int getPlannedFiles() {
+        return plan.size();
+    }
+
+    /**
+     * get the number of bytes that were written into the destinations so far
+     *
+     * @return number of copied bytes
+     */
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    /**
+     * get the number of files that were copied or linked into the destinations so far
+     *
+     * @return number of written files
+     */
+    public int getWrittenFiles() {
+        return writtenFiles.get();
+    }
+
+    /**
+     * get the number of files that were copied or linked into a single destination so far
+     *
+     * @param destination Path of the destination
+     * @return number of files written into the destination or its sub folders
+     */
+    public int getWrittenFiles(Path destination) {
+        int files = 0;
+        for (Map.Entry<Path, AtomicInteger> entry : writtenFolders.entrySet()) {
+            if (entry.getKey().startsWith(destination)) {
+                files += entry.getValue().get();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * write all planned folders and files of a destination into an archive instead of copying them, the link mode of the files is ignored
+     *
+     * @param archive ArchiveWriter of the destination
+     * @param destination Path of the destination, the entries of the archive are named relative to it
+     * @throws IOException
+     */
+    public void writeTo(ArchiveWriter archive, Path destination) throws IOException {
+        for (Path directory : directories) {
+            if (directory.startsWith(destination) && !directory.equals(destination)) {
+                archive.addDirectory(getEntryName(destination, directory));
+            }
+        }
+        for (Map.Entry<Path, Map<Path, LinkMode>> entry : plan.entrySet()) {
+            for (Path target : entry.getValue().keySet()) {
+                if (target.startsWith(destination)) {
+                    archive.addFile(getEntryName(destination, target), entry.getKey());
+                    copiedBytes.addAndGet(StorageProvider.getInstance().getFileSize(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    private static String getEntryName(Path destination, Path target) {
+        // archives always use slashes
+        return destination.relativize(target).toString().replace('\\', '/');
+    }
+
+    /**
+     * execute all planned copies and wait until they are finished
+     *
+     * @return the messages of all failed copies, empty if everything was copied
+     * @throws IOException if the planned folders cannot be created or the copies cannot be finished
+     * @throws InterruptedException
+     */
+    public List<String> execute() throws IOException, InterruptedException {
+        logPlan();
+        cancelled = false;
+        if (createdPaths != null) {
+            recordCreatedDirectories();
+        }
+        if (fileSystem != null) {
+            fileSystem.createDirectories(directories);
+        } else {
+            for (Path directory : directories) {
+                StorageProvider.getInstance().createDirectories(directory);
+            }
+        }
+        directories.clear();
+
+        List<Future<?>> pendingCopies = new ArrayList<>();
+        List<Path> callingThreadCopies = new ArrayList<>();
+        for (Map.Entry<Path, Map<Path, LinkMode>> entry : plan.entrySet()) {
+            Path source = entry.getKey();
+            Map<Path, LinkMode> targets = entry.getValue();
+            ExecutorService fileExecutor = getExecutor(source);
+            if (fileExecutor == null) {
+                callingThreadCopies.add(source);
+                continue;
+            }
+            pendingCopies.add(fileExecutor.submit(() -> {
+                activeCopies.incrementAndGet();
+                try {
+                    if (!cancelled) {
+                        copyToTargets(source, targets);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // an interrupted copy of a cancelled execution is no failure of its own
+                    if (!cancelled) {
+                        log.error("Export Plugin - cannot copy " + source + " to " + targets.keySet(), e);
+                        failures.add("Cannot copy " + source + " to " + targets.keySet() + ": " + e.getMessage());
+                    }
+                } finally {
+                    synchronized (activeCopies) {
+                        activeCopies.decrementAndGet();
+                        activeCopies.notifyAll();
+                    }
+                }
+            }));
+        }
+        try {
+            // the calling thread copies its files after all other files are submitted, so that both run at the same time
+            for (Path source : callingThreadCopies) {
+                // a cancelled export stops between two files
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Copy was cancelled");
+                }
+                Map<Path, LinkMode> targets = plan.get(source);
+                try {
+                    copyToTargets(source, targets);
+                } catch (IOException | RuntimeException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException("Copy was cancelled");
+                    }
+                    // failures are collected like those of the pooled copies, so that the other files are copied anyway
+                    log.error("Export Plugin - cannot copy " + source + " to " + targets.keySet(), e);
+                    failures.add("Cannot copy " + source + " to " + targets.keySet() + ": " + e.getMessage());
+                }
+            }
+            for (Future<?> future : pendingCopies) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            cancelCopies(pendingCopies);
+            throw e;
+        } finally {
+            plan.clear();
+        }
+        sourceSizes.clear();
+        sourceProgress.clear();
+        sourceFolders.clear();
+        transfer.flush();
+        logStatistics();
+        int linked = linkedFiles.getAndSet(0);
+        if (linked > 0) {
+            log.debug("Export Plugin - linked " + linked + " files instead of copying them");
+        }
+        if (verifyChecksums && failures.isEmpty()) {
+            verifyChecksums();
+        }
+        int resumed = resumedFiles.getAndSet(0);
+        if (resumed > 0) {
+            log.info("Export Plugin - skipped " + resumed + " files that were completely copied by a previous attempt");
+        }
+        // the journals stay on the disk until the export is finished, so that a cancelled export can be resumed
+        for (CopyJournal journal : journals) {
+            journal.close();
+        }
+        journals.clear();
+        List<String> result;
+        synchronized (failures) {
+            result = new ArrayList<>(failures);
+            failures.clear();
+        }
+        checksumManifests.clear();
+
+        if (!manifests.isEmpty()) {
+            log.debug("Export Plugin - incremental export skipped " + skippedFiles.getAndSet(0) + " unchanged files");
+            // keep the old manifests if anything failed, a partial manifest would mark files as removed
+            if (result.isEmpty() && createdPaths != null) {
+                pendingManifests.addAll(manifests);
+            } else if (result.isEmpty()) {
+                for (ExportManifest manifest : manifests) {
+                    manifest.finish();
+                }
+            }
+            manifests.clear();
+        }
+        return result;
+    }
+
+    /**
+     * stop all pooled copies of a cancelled execution. Copies that did not start yet are skipped, and the running ones are interrupted and
+     * awaited, so that no copy writes into the destinations afterwards.
+     *
+     * @param pendingCopies all pooled copies of the execution
+     */
+    private void cancelCopies(List<Future<?>> pendingCopies) {
+        cancelled = true;
+        for (Future<?> future : pendingCopies) {
+            future.cancel(true);
+        }
+        // the calling thread is usually interrupted, it has to wait anyway
+        boolean interrupted = Thread.interrupted();
+        synchronized (activeCopies) {
+            while (activeCopies.get() > 0) {
+                try {
+                    activeCopies.wait(100);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * remember the planned folders and their parents that do not exist yet
+     */
+    private void recordCreatedDirectories() {
+        Set<Path> checked = new HashSet<>();
+        for (Path directory : directories) {
+            for (Path folder = directory; folder != null && checked.add(folder); folder = folder.getParent()) {
+                if (StorageProvider.getInstance().isFileExists(folder)) {
+                    break;
+                }
+                createdPaths.add(folder);
+            }
+        }
+    }
+
+    /**
+     * remove all targets that are still up to date from the previous export
+     *
+     * @param source Path of the original file
+     * @param targets all destinations of the file
+     * @return the destinations that need to be copied
+     * @throws IOException
+     */
+    private List<Path> filterUnchanged(Path source, List<Path> targets) throws IOException {
+        if (manifests.isEmpty()) {
+            return targets;
+        }
+        List<Path> changed = new ArrayList<>(targets.size());
+        for (Path target : targets) {
+            ExportManifest manifest = getManifest(target);
+            if (manifest != null && manifest.isUnchanged(source, target)) {
+                skippedFiles.incrementAndGet();
+                ChecksumManifest checksumManifest = getChecksumManifest(target);
+                if (checksumManifest != null && !checksumManifest.keep(target)) {
+                    checksumManifest.put(target, ChecksumManifest.createChecksum(source, checksumAlgorithm));
+                }
+            } else {
+                changed.add(target);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * remove all targets that were completely copied by a previous attempt of the same export
+     *
+     * @param source Path of the original file
+     * @param targets all destinations of the file that need to be updated
+     * @return the destinations that still need to be copied
+     * @throws IOException
+     */
+    private List<Path> filterCompleted(Path source, List<Path> targets) throws IOException {
+        if (journals.isEmpty()) {
+            return targets;
+        }
+        List<Path> missing = new ArrayList<>(targets.size());
+        for (Path target : targets) {
+            CopyJournal journal = getJournal(target);
+            CopyJournal.Entry entry = journal == null ? null : journal.getCompletedEntry(source, target, checksumAlgorithm);
+            if (entry == null) {
+                missing.add(target);
+                continue;
+            }
+            resumedFiles.incrementAndGet();
+            // the skipped file still belongs to this export
+            journal.record(source, target, entry.getChecksum());
+            ChecksumManifest checksumManifest = getChecksumManifest(target);
+            if (checksumManifest != null) {
+                String checksum = entry.getChecksum();
+                if (checksum == null) {
+                    checksum = ChecksumManifest.createChecksum(source, checksumAlgorithm);
+                }
+                checksumManifest.put(target, checksum);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * get the copy journal of the destination that contains the target
+     *
+     * @param target Path of a copy
+     * @return the journal of the innermost destination that contains the target, or null if the destination cannot be resumed
+     */
+    private CopyJournal getJournal(Path target) {
+        CopyJournal result = null;
+        for (CopyJournal journal : journals) {
+            if (journal.contains(target) && (result == null || journal.getDestination().startsWith(result.getDestination()))) {
+                result = journal;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * get the manifest of the destination that contains the target
+     *
+     * @param target Path of a copy
+     * @return the manifest of the innermost destination that contains the target, or null if the destination is not exported incrementally
+     */
+    private ExportManifest getManifest(Path target) {
+        ExportManifest result = null;
+        for (ExportManifest manifest : manifests) {
+            if (manifest.contains(target) && (result == null || manifest.getDestination().startsWith(result.getDestination()))) {
+                result = manifest;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * get the checksum manifest of the destination that contains the target
+     *
+     * @param target Path of a copy
+     * @return the manifest of the innermost destination that contains the target, or null if no checksums are recorded for the destination
+     */
+    private ChecksumManifest getChecksumManifest(Path target) {
+        ChecksumManifest result = null;
+        for (ChecksumManifest manifest : checksumManifests) {
+            if (manifest.contains(target) && (result == null || manifest.getDestination().startsWith(result.getDestination()))) {
+                result = manifest;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * read all written files again and compare them to their recorded checksums, the files are verified in parallel
+     *
+     * @throws InterruptedException
+     */
+    private void verifyChecksums() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<?>> pendingVerifications = new ArrayList<>();
+        int verified = 0;
+        for (ChecksumManifest manifest : checksumManifests) {
+            for (Path file : manifest.getWrittenFiles()) {
+                verified++;
+                if (executor == null) {
+                    verifyChecksum(manifest, file);
+                } else {
+                    pendingVerifications.add(executor.submit(() -> verifyChecksum(manifest, file)));
+                }
+            }
+        }
+        for (Future<?> future : pendingVerifications) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause().getMessage());
+            }
+        }
+        log.debug("Export Plugin - verified the checksums of " + verified + " files in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void verifyChecksum(ChecksumManifest manifest, Path file) {
+        try {
+            if (!manifest.verify(file)) {
+                log.error("Export Plugin - checksum mismatch of " + file);
+                failures.add("Checksum mismatch of " + file);
+            }
+        } catch (IOException e) {
+            log.error("Export Plugin - cannot verify the checksum of " + file, e);
+            failures.add("Cannot verify the checksum of " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * copy one source file into all of its destinations
+     *
+     * @param source Path of the original file
+     * @param allTargets all destinations of the file with their link mode, never empty
+     * @throws IOException
+     */
+    private void copyToTargets(Path source, Map<Path, LinkMode> allTargets) throws IOException {
+        try {
+            updateTargets(source, allTargets);
+        } finally {
+            ExportProgress.FolderProgress folderProgress = sourceProgress.get(source);
+            if (folderProgress != null) {
+                folderProgress.done(allTargets.size(), sourceSizes.getOrDefault(source, 0L) * allTargets.size());
+            }
+        }
+    }
+
+    /**
+     * copy one source file into all destinations that are not up to date
+     *
+     * @param source Path of the original file
+     * @param allTargets all destinations of the file with their link mode, never empty
+     * @throws IOException
+     */
+    private void updateTargets(Path source, Map<Path, LinkMode> allTargets) throws IOException {
+        List<Path> targets = filterCompleted(source, filterUnchanged(source, new ArrayList<>(allTargets.keySet())));
+        if (targets.isEmpty()) {
+            return;
+        }
+        if (createdPaths != null) {
+            for (Path target : targets) {
+                if (!StorageProvider.getInstance().isFileExists(target)) {
+                    createdPaths.add(target);
+                }
+            }
+        }
+        try {
+            List<Path> copies = new ArrayList<>(targets.size());
+            for (Path target : targets) {
+                LinkMode linkMode = allTargets.get(target);
+                if (linkMode != LinkMode.COPY && FileSystemView.isLocalStorage() && linkMode.link(source, target)) {
+                    linkedFiles.incrementAndGet();
+                } else {
+                    copies.add(target);
+                }
+            }
+            String checksum = null;
+            if (!copies.isEmpty()) {
+                checksum = copyToChangedTargets(source, copies);
+            }
+            if (checksumAlgorithm != null) {
+                recordChecksum(source, targets, checksum);
+            }
+            for (Path target : targets) {
+                CopyJournal journal = getJournal(target);
+                if (journal != null) {
+                    journal.record(source, target, checksum);
+                }
+            }
+            writtenFiles.addAndGet(targets.size());
+            for (Path target : targets) {
+                writtenFolders.computeIfAbsent(target.toAbsolutePath().getParent(), k -> new AtomicInteger()).incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path target : targets) {
+                ExportManifest manifest = getManifest(target);
+                if (manifest != null) {
+                    manifest.remove(target);
+                }
+                ChecksumManifest checksumManifest = getChecksumManifest(target);
+                if (checksumManifest != null) {
+                    checksumManifest.remove(target);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * record the checksum of a source file for all of its written destinations
+     *
+     * @param source Path of the original file
+     * @param targets all written destinations of the file
+     * @param checksum checksum computed while the file was copied, null if all destinations were linked
+     * @throws IOException
+     */
+    private void recordChecksum(Path source, List<Path> targets, String checksum) throws IOException {
+        for (Path target : targets) {
+            ChecksumManifest checksumManifest = getChecksumManifest(target);
+            if (checksumManifest != null) {
+                if (checksum == null) {
+                    // linked files have the same content as the source
+                    checksum = ChecksumManifest.createChecksum(source, checksumAlgorithm);
+                }
+                checksumManifest.put(target, checksum);
+            }
+        }
+    }
+
+    /**
+     * copy one source file into all destinations that need to be updated
+     *
+     * @param source Path of the original file
+     * @param targets all destinations that need to be updated, never empty
+     * @return the checksum of the file if checksums are recorded, null otherwise
+     * @throws IOException
+     */
+    private String copyToChangedTargets(Path source, List<Path> targets) throws IOException {
+        Path first = targets.get(0);
+        Long plannedSize = sourceSizes.get(source);
+        long size = plannedSize == null ? StorageProvider.getInstance().getFileSize(source) : plannedSize;
+        long start = System.nanoTime();
+        long written = size;
+        List<Path> writtenTargets = targets;
+        MessageDigest digest = checksumAlgorithm == null ? null : checksumAlgorithm.createDigest();
+        if (targets.size() == 1 && digest == null) {
+            transfer.copy(source, first);
+        } else if (digest == null && !useNio(fanOut)) {
+            // without a fast mode every destination is copied by the StorageProvider
+            for (Path target : targets) {
+                transfer.copy(source, target);
+            }
+            written = size * targets.size();
+        } else if (fanOut == LinkMode.COPY) {
+            // the checksum is computed while the bytes stream through, so the file is read only once
+            writeToAll(source, targets, digest);
+            for (Path target : targets) {
+                transfer.written(target);
+            }
+            written = size * targets.size();
+        } else {
+            if (digest == null) {
+                transfer.copy(source, first);
+            } else {
+                writeToAll(source, Collections.singletonList(first), digest);
+                transfer.written(first);
+            }
+            writtenTargets = new ArrayList<>(targets.size());
+            writtenTargets.add(first);
+            for (Path target : targets.subList(1, targets.size())) {
+                if (!FileSystemView.isLocalStorage() || !fanOut.link(first, target)) {
+                    transfer.copy(source, target);
+                    written += size;
+                    writtenTargets.add(target);
+                }
+            }
+        }
+        throttle(source, writtenTargets, size);
+        copiedBytes.addAndGet(written);
+        Path folder = sourceFolders.getOrDefault(source, source.toAbsolutePath().getParent());
+        statistics.computeIfAbsent(folder, k -> new FolderStatistics()).add(written, start, System.nanoTime());
+        return digest == null ? null : ChecksumManifest.toHex(digest.digest());
+    }
+
+    /**
+     * wait until the bytes written into limited destinations fit into their bandwidth
+     *
+     * @param source Path of the original file
+     * @param targets all written destinations of the file
+     * @param size size of the file
+     * @throws IOException if the thread was interrupted
+     */
+    private void throttle(Path source, List<Path> targets, long size) throws IOException {
+        if (limits == null) {
+            return;
+        }
+        try {
+            for (Path target : targets) {
+                DestinationLimits.Limit limit = limits.getLimit(target);
+                if (limit != null) {
+                    limit.throttle(size);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy of " + source + " was interrupted");
+        }
+    }
+
+    /**
+     * compute the size of the plan, add it to the progress of the export and write it into the log
+     */
+    private void logPlan() {
+        long bytes = 0;
+        int targets = 0;
+        // folder -> progress of its folder type, the type of a folder is only looked up once
+        Map<Path, ExportProgress.FolderProgress> folderProgress = new HashMap<>();
+        for (Map.Entry<Path, Map<Path, LinkMode>> entry : plan.entrySet()) {
+            Long size = sourceSizes.get(entry.getKey());
+            if (size == null) {
+                try {
+                    size = StorageProvider.getInstance().getFileSize(entry.getKey());
+                } catch (IOException e) {
+                    // the copy of the file will fail and report the problem
+                    size = 0L;
+                }
+                sourceSizes.put(entry.getKey(), size);
+            }
+            if (progress != null) {
+                Path folder = sourceFolders.getOrDefault(entry.getKey(), entry.getKey().toAbsolutePath().getParent());
+                ExportProgress.FolderProgress planned =
+                        folderProgress.computeIfAbsent(folder, k -> progress.getFolder(getFolderType(k)));
+                planned.plan(entry.getValue().size(), size * entry.getValue().size());
+                sourceProgress.put(entry.getKey(), planned);
+            }
+            bytes += size * entry.getValue().size();
+            targets += entry.getValue().size();
+        }
+        plannedBytes = bytes;
+        log.debug(String.format("Export Plugin - copy plan: %d source files, %d copies, %.1f MB", plan.size(), targets, bytes / (1024d * 1024d)));
+    }
+
+    /**
+     * write the throughput of every copied folder into the log
+     */
+    private void logStatistics() {
+        for (Map.Entry<Path, FolderStatistics> entry : statistics.entrySet()) {
+            FolderStatistics folderStatistics = entry.getValue();
+            double seconds = Math.max(1, folderStatistics.end - folderStatistics.start) / 1000000000d;
+            double megabytes = folderStatistics.bytes / (1024d * 1024d);
+            log.info(String.format("Export Plugin - copied %d files (%.1f MB) of %s in %.2f s, %.1f MB/s", folderStatistics.files, megabytes,
+                    entry.getKey(), seconds, megabytes / seconds));
+            if (metrics != null) {
+                metrics.add(ExportMetrics.COPY_PREFIX + getFolderType(entry.getKey()), folderStatistics.end - folderStatistics.start,
+                        folderStatistics.files, folderStatistics.bytes);
+            }
+        }
+        statistics.clear();
+    }
+
+    /**
+     * check if a fast mode is configured, only then the files are read and written by NIO instead of the StorageProvider
+     *
+     * @return true if files are copied in parallel, linked or transferred by channels
+     */
+    private boolean isFastMode() {
+        return parallelism > 1 || !folderParallelism.isEmpty() || fanOut != LinkMode.COPY || transfer.isUseChannels();
+    }
+
+    /**
+     * check if files of the given link mode can be read and written by NIO directly
+     *
+     * @param linkMode link mode of the copies
+     * @return true if a fast mode is configured and the StorageProvider works on the local file system
+     */
+    private boolean useNio(LinkMode linkMode) {
+        return (linkMode != LinkMode.COPY || isFastMode()) && FileSystemView.isLocalStorage();
+    }
+
+    /**
+     * get the thread pool that copies a planned file
+     *
+     * @param source Path of the original file
+     * @return the pool of the innermost folder with its own parallelism, the pool of the copier otherwise, or null if the file is copied in
+     *         the calling thread
+     */
+    private ExecutorService getExecutor(Path source) {
+        if (folderParallelism.isEmpty()) {
+            return executor;
+        }
+        Path folder = sourceFolders.get(source);
+        Path match = null;
+        for (Path registered : folderParallelism.keySet()) {
+            if (folder != null && folder.startsWith(registered) && (match == null || registered.startsWith(match))) {
+                match = registered;
+            }
+        }
+        if (match == null) {
+            return executor;
+        }
+        return folderExecutors.computeIfAbsent(folderParallelism.get(match), FolderCopier::createExecutor);
+    }
+
+    /**
+     * get the folder type of a copied folder
+     *
+     * @param folder Path of the copied folder
+     * @return the type of the innermost registered folder that contains it, or the folder name if it was not registered
+     */
+    private String getFolderType(Path folder) {
+        Path match = null;
+        for (Path registered : folderTypes.keySet()) {
+            if (folder.startsWith(registered) && (match == null || registered.startsWith(match))) {
+                match = registered;
+            }
+        }
+        return match == null ? String.valueOf(folder.getFileName()) : folderTypes.get(match);
+    }
+
+    /**
+     * read the source file once and write its bytes into all destinations
+     *
+     * @param source Path of the original file
+     * @param targets all destinations of the file
+     * @param digest MessageDigest that is updated with all bytes of the file, can be null
+     * @throws IOException
+     */
+    private void writeToAll(Path source, List<Path> targets, MessageDigest digest) throws IOException {
+        List<OutputStream> outputs = new ArrayList<>();
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        try (InputStream in = storage.newInputStream(source)) {
+            for (Path target : targets) {
+                outputs.add(storage.newOutputStream(target));
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                for (OutputStream out : outputs) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        } finally {
+            IOException closeException = null;
+            for (OutputStream out : outputs) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    closeException = e;
+                }
+            }
+            if (closeException != null) {
+                throw closeException;
+            }
+        }
+    }
+
+    /**
+     * number of copied bytes and the time span of the copies of a single folder
+     */
+    private static class FolderStatistics {
+        private long files;
+        private long bytes;
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+
+        synchronized void add(long copiedBytes, long copyStart, long copyEnd) {
+            files++;
+            bytes += copiedBytes;
+            start = Math.min(start, copyStart);
+            end = Math.max(end, copyEnd);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (ExecutorService folderExecutor : folderExecutors.values()) {
+            if (folderExecutor != null) {
+                folderExecutor.shutdownNow();
+            }
+        }
+        for (CopyJournal journal : journals) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Export Plugin - cannot close copy journal " + journal.getJournalFile(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Ways to create a file in the export destination from an already existing file without copying its bytes. If linking is not possible, e.g.
+ * because both paths are on different file systems, the caller falls back to a normal copy.
+ */
+@Log4j2
+public enum LinkMode {
+
+    /**
+     * always copy the bytes
+     */
+    COPY,
+    /**
+     * create a hard link, both paths share the same inode afterwards
+     */
+    HARDLINK,
+    /**
+     * create a copy-on-write clone of the file, supported by btrfs, xfs and zfs. The clone is created by cp of the GNU coreutils, so it is
+     * only available on Linux.
+     */
+    REFLINK,
+    /**
+     * try a reflink first, then a hard link
+     */
+    AUTO;
+
+    // Java has no API for reflinks, they are created by cp --reflink=always of the GNU coreutils
+    private static final boolean REFLINK_COMMAND_AVAILABLE = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux");
+
+    // [source file system, target file system] -> true if the first reflink between them succeeded
+    private static final Map<List<FileStore>, Boolean> REFLINK_SUPPORT = new ConcurrentHashMap<>();
+
+    /**
+     * get the LinkMode by its configured name
+     *
+     * @param name configured value, case insensitive
+     * @return the matching LinkMode, COPY if the name is empty or unknown
+     */
+    public static LinkMode getByName(String name) {
+        if (name != null) {
+            for (LinkMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return COPY;
+    }
+
+    /**
+     * try to create the target from the existing file without copying its bytes
+     *
+     * @param existing Path of the file that already exists
+     * @param target Path of the file that should be created, an existing file will be replaced
+     * @return true if the target was linked, false if the caller has to copy the file
+     */
+    public boolean link(Path existing, Path target) {
+        switch (this) {
+            case HARDLINK:
+                return createHardLink(existing, target);
+            case REFLINK:
+                return createReflink(existing, target);
+            case AUTO:
+                return createReflink(existing, target) || createHardLink(existing, target);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean createHardLink(Path existing, Path target) {
+        try {
+            Files.deleteIfExists(target);
+            Files.createLink(target, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            log.debug("Export Plugin - cannot create hard link from " + existing + " to " + target + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean createReflink(Path existing, Path target) {
+        if (!REFLINK_COMMAND_AVAILABLE) {
+            return false;
+        }
+        List<FileStore> fileStores;
+        try {
+            fileStores = Arrays.asList(Files.getFileStore(existing), Files.getFileStore(target.toAbsolutePath().getParent()));
+        } catch (IOException e) {
+            log.debug("Export Plugin - cannot create reflink from " + existing + " to " + target + ": " + e.getMessage());
+            return false;
+        }
+        Boolean supported = REFLINK_SUPPORT.get(fileStores);
+        if (Boolean.FALSE.equals(supported)) {
+            // the first reflink between these file systems failed, so no further process is started for them
+            return false;
+        }
+        boolean linked = runReflink(existing, target);
+        if (supported == null && REFLINK_SUPPORT.putIfAbsent(fileStores, linked) == null && !linked) {
+            log.debug("Export Plugin - no reflinks from " + fileStores.get(0) + " to " + fileStores.get(1) + ", files are copied instead");
+        }
+        return linked;
+    }
+
+    private static boolean runReflink(Path existing, Path target) {
+        ProcessBuilder builder = new ProcessBuilder("cp", "--reflink=always", existing.toString(), target.toString());
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        try {
+            return builder.start().waitFor() == 0;
+        } catch (IOException e) {
+            log.debug("Export Plugin - cannot create reflink from " + existing + " to " + target + ": " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
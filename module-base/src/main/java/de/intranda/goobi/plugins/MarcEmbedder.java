@@ -0,0 +1,199 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Embeds MARC records into the first mets:dmdSec of a METS file. The METS file is streamed through in a single pass, so that the memory usage
+ * does not depend on the size of the METS file. The MARC records are appended to the dmdSec inside of a new mets:mdWrap element with
+ * MDTYPE="MARC", their root elements are renamed to "marc".
+ */
+public class MarcEmbedder {
+
+    private static final String METS_NAMESPACE = "http://www.loc.gov/METS/";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    private MarcEmbedder() {
+        // static access only
+    }
+
+    /**
+     * embed the MARC records into a METS file. The result is written into a temporary file next to the METS file, which then atomically
+     * replaces the METS file.
+     *
+     * @param metsFile Path of the METS file
+     * @param sourceMarcFile Path of the MARC record of the source, can be null
+     * @param digitalMarcFile Path of the MARC record of the digital copy, can be null
+     * @throws IOException
+     * @throws XMLStreamException if any of the files is no well formed XML, or if the METS file has no dmdSec
+     */
+    public static void embed(Path metsFile, Path sourceMarcFile, Path digitalMarcFile) throws IOException, XMLStreamException {
+        embed(metsFile, metsFile, sourceMarcFile, digitalMarcFile);
+    }
+
+    /**
+     * embed the MARC records into a METS file and write the result to another file. The result is written into a temporary file next to the
+     * output file first, which then atomically replaces the output file, so that nobody can see a half written output file. Both files have to
+     * be on the local file system, the export embeds the records into its staged files only.
+     *
+     * @param metsFile Path of the METS file
+     * @param outputFile Path of the updated METS file, can be the METS file itself
+     * @param sourceMarcFile Path of the MARC record of the source, can be null
+     * @param digitalMarcFile Path of the MARC record of the digital copy, can be null
+     * @throws IOException
+     * @throws XMLStreamException if any of the files is no well formed XML, or if the METS file has no dmdSec
+     */
+    public static void embed(Path metsFile, Path outputFile, Path sourceMarcFile, Path digitalMarcFile) throws IOException, XMLStreamException {
+        // Files.createTempFile would create the file readable for its owner only, the published file needs the default permissions
+        Path temporaryFile = outputFile.toAbsolutePath().resolveSibling("." + outputFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(metsFile);
+                    OutputStream out = Files.newOutputStream(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                embed(in, out, sourceMarcFile, digitalMarcFile);
+            }
+            Files.move(temporaryFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * copy a METS document from the input to the output and embed the MARC records into its first dmdSec
+     *
+     * @param metsInput stream of the METS document
+     * @param output stream the updated METS document is written to
+     * @param sourceMarcFile Path of the MARC record of the source, can be null
+     * @param digitalMarcFile Path of the MARC record of the digital copy, can be null
+     * @throws IOException
+     * @throws XMLStreamException if any of the files is no well formed XML, or if the METS document has no dmdSec
+     */
+    public static void embed(InputStream metsInput, OutputStream output, Path sourceMarcFile, Path digitalMarcFile)
+            throws IOException, XMLStreamException {
+        XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(metsInput);
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(output, "UTF-8");
+        try {
+            boolean embedded = false;
+            int dmdSecDepth = -1;
+            int depth = 0;
+            String metsPrefix = "mets";
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    QName name = event.asStartElement().getName();
+                    if (!embedded && dmdSecDepth < 0 && METS_NAMESPACE.equals(name.getNamespaceURI()) && "dmdSec".equals(name.getLocalPart())) {
+                        dmdSecDepth = depth;
+                        metsPrefix = name.getPrefix();
+                    }
+                } else if (event.isEndElement()) {
+                    if (depth == dmdSecDepth) {
+                        writeMdWrap(writer, metsPrefix, sourceMarcFile, digitalMarcFile);
+                        embedded = true;
+                        dmdSecDepth = -1;
+                    }
+                    depth--;
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            if (!embedded) {
+                throw new XMLStreamException("METS file contains no dmdSec");
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * write the mets:mdWrap element with both MARC records
+     */
+    private static void writeMdWrap(XMLEventWriter writer, String metsPrefix, Path sourceMarcFile, Path digitalMarcFile)
+            throws IOException, XMLStreamException {
+        List<Attribute> attributes = new ArrayList<>();
+        attributes.add(EVENT_FACTORY.createAttribute("MDTYPE", "MARC"));
+        writer.add(EVENT_FACTORY.createStartElement(metsPrefix, METS_NAMESPACE, "mdWrap", attributes.iterator(), null));
+        writer.add(EVENT_FACTORY.createStartElement(metsPrefix, METS_NAMESPACE, "xmlData"));
+        if (digitalMarcFile != null) {
+            copyMarcRecord(writer, digitalMarcFile);
+        }
+        if (sourceMarcFile != null) {
+            copyMarcRecord(writer, sourceMarcFile);
+        }
+        writer.add(EVENT_FACTORY.createEndElement(metsPrefix, METS_NAMESPACE, "xmlData"));
+        writer.add(EVENT_FACTORY.createEndElement(metsPrefix, METS_NAMESPACE, "mdWrap"));
+    }
+
+    /**
+     * copy the root element of a MARC file into the writer and rename it to "marc"
+     */
+    private static void copyMarcRecord(XMLEventWriter writer, Path marcFile) throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(marcFile)) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(in);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement()) {
+                        depth++;
+                        if (depth == 1) {
+                            StartElement root = event.asStartElement();
+                            QName name = root.getName();
+                            @SuppressWarnings("unchecked")
+                            Iterator<Attribute> rootAttributes = root.getAttributes();
+                            @SuppressWarnings("unchecked")
+                            Iterator<Namespace> rootNamespaces = root.getNamespaces();
+                            writer.add(EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), "marc", rootAttributes,
+                                    rootNamespaces));
+                            continue;
+                        }
+                    } else if (event.isEndElement()) {
+                        depth--;
+                        if (depth == 0) {
+                            QName name = event.asEndElement().getName();
+                            writer.add(EVENT_FACTORY.createEndElement(name.getPrefix(), name.getNamespaceURI(), "marc"));
+                            continue;
+                        }
+                    }
+                    // skip everything outside of the root element, e.g. the XML declaration
+                    if (depth > 0) {
+                        writer.add(event);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
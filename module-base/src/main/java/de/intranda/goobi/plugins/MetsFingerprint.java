@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Content hash of a METS or anchor file that ignores the volatile timestamps of the METS header. Two exports of the same metadata only
+ * differ in the CREATEDATE and LASTMODDATE attributes of mets:metsHdr, so their fingerprints are equal. The file is streamed through once,
+ * element names, attributes and text are hashed in document order.
+ */
+public class MetsFingerprint {
+
+    private static final String METS_NAMESPACE = "http://www.loc.gov/METS/";
+
+    private static final Set<String> VOLATILE_HEADER_ATTRIBUTES = new HashSet<>(Arrays.asList("CREATEDATE", "LASTMODDATE"));
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private MetsFingerprint() {
+        // static access only
+    }
+
+    /**
+     * check if two METS files have the same content, apart from the timestamps of the METS header
+     *
+     * @param file Path of the new file
+     * @param existingFile Path of the existing file, can be missing
+     * @return true if the existing file has the same fingerprint
+     * @throws IOException if the new file cannot be read
+     */
+    public static boolean isUnchanged(Path file, Path existingFile) throws IOException {
+        if (!Files.isRegularFile(existingFile)) {
+            return false;
+        }
+        String fingerprint = create(file);
+        try {
+            return fingerprint.equals(create(existingFile));
+        } catch (IOException e) {
+            // e.g. a broken file of an earlier export, it is replaced
+            return false;
+        }
+    }
+
+    /**
+     * compute the fingerprint of a METS file
+     *
+     * @param file Path of the METS file
+     * @return hex encoded SHA-256 hash of the content
+     * @throws IOException if the file cannot be read or is no well formed XML
+     */
+    public static String create(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            update(digest, '<', reader.getNamespaceURI() + ":" + reader.getLocalName());
+                            boolean header = METS_NAMESPACE.equals(reader.getNamespaceURI()) && "metsHdr".equals(reader.getLocalName());
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                String name = reader.getAttributeLocalName(i);
+                                if (header && VOLATILE_HEADER_ATTRIBUTES.contains(name)) {
+                                    continue;
+                                }
+                                update(digest, '@', reader.getAttributeNamespace(i) + ":" + name + "=" + reader.getAttributeValue(i));
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            update(digest, '>', "");
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if (!reader.isWhiteSpace()) {
+                                update(digest, '#', reader.getText());
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read " + file + ": " + e.getMessage(), e);
+        }
+        return ChecksumManifest.toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, char type, String value) {
+        digest.update((byte) type);
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // separates the values, so that different splits of the same text cannot collide
+        digest.update((byte) 0);
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // adjacent text is reported as a single event
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
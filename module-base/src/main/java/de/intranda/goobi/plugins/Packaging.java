@@ -0,0 +1,57 @@
+package de.intranda.goobi.plugins;
+
+import lombok.Getter;
+
+/**
+ * Ways to write an export into the destination: either as a directory tree, or as a single archive file per process.
+ */
+public enum Packaging {
+
+    /**
+     * write a directory tree
+     */
+    NONE("", ""),
+    /**
+     * write a ZIP archive
+     */
+    ZIP("zip", ".zip"),
+    /**
+     * write an uncompressed TAR archive
+     */
+    TAR("tar", ".tar"),
+    /**
+     * write a gzip compressed TAR archive
+     */
+    TAR_GZ("tar.gz", ".tar.gz");
+
+    // configured name of the packaging
+    @Getter
+    private final String name;
+
+    // file extension of the archive
+    @Getter
+    private final String extension;
+
+    Packaging(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    /**
+     * get the Packaging by its configured name
+     *
+     * @param name configured value, case insensitive
+     * @return the matching Packaging, NONE if the name is empty, null if the name is unknown
+     */
+    public static Packaging getByName(String name) {
+        if (name == null || name.isBlank()) {
+            return NONE;
+        }
+        for (Packaging packaging : values()) {
+            if (packaging.name.equalsIgnoreCase(name.trim())) {
+                return packaging;
+            }
+        }
+        return null;
+    }
+}
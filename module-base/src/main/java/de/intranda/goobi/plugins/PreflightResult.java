@@ -0,0 +1,59 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Result of the preflight of a single process: the export was checked, but nothing was written.
+ */
+public class PreflightResult {
+
+    @Getter
+    private final int processId;
+
+    // null if the process does not exist
+    @Getter
+    private final String processTitle;
+
+    // true if the process could be exported
+    @Getter
+    private final boolean exportable;
+
+    // the resolved export destinations, or the package files if the export is packaged
+    @Getter
+    private final List<String> destinations;
+
+    // problems that would cancel the export, e.g. validation errors
+    @Getter
+    private final List<String> problems;
+
+    // findings that would not cancel the export, e.g. missing source folders
+    @Getter
+    private final List<String> warnings;
+
+    @Getter
+    private final long durationMillis;
+
+    /**
+     * create the result of a preflight
+     *
+     * @param processId id of the process
+     * @param processTitle title of the process, null if the process does not exist
+     * @param destinations the resolved export destinations
+     * @param problems all problems that would cancel the export
+     * @param warnings all findings that would not cancel the export
+     * @param durationMillis duration of the preflight in milliseconds
+     */
+    public PreflightResult(int processId, String processTitle, List<String> destinations, List<String> problems, List<String> warnings,
+            long durationMillis) {
+        this.processId = processId;
+        this.processTitle = processTitle;
+        this.exportable = problems.isEmpty();
+        this.destinations = Collections.unmodifiableList(destinations);
+        this.problems = Collections.unmodifiableList(problems);
+        this.warnings = Collections.unmodifiableList(warnings);
+        this.durationMillis = durationMillis;
+    }
+}
@@ -0,0 +1,70 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.goobi.beans.Project;
+
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.persistence.managers.ProjectManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache of the export projects of the &lt;target&gt; rules, keyed by project title. Every project is loaded from the database at most once
+ * per minute, and the whole cache is dropped together with the cached export profiles when the configuration file changes. Projects that do
+ * not exist are not cached, so that a project created later is found right away.
+ */
+@Log4j2
+public class ProjectCache {
+
+    private static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final Map<String, CachedProject> PROJECTS = new ConcurrentHashMap<>();
+
+    private ProjectCache() {
+        // static access only
+    }
+
+    /**
+     * get a project by its title
+     *
+     * @param projectName title of the project
+     * @return the Project, or null if it does not exist
+     * @throws DAOException if the project cannot be loaded
+     */
+    public static Project getProject(String projectName) throws DAOException {
+        CachedProject cached = PROJECTS.get(projectName);
+        long now = System.nanoTime();
+        if (cached != null && now - cached.loaded < MAX_AGE_NANOS) {
+            return cached.project;
+        }
+        Project project = ProjectManager.getProjectByName(projectName);
+        if (project == null) {
+            PROJECTS.remove(projectName);
+        } else {
+            PROJECTS.put(projectName, new CachedProject(project, now));
+        }
+        return project;
+    }
+
+    /**
+     * drop all cached projects
+     */
+    public static void invalidate() {
+        if (!PROJECTS.isEmpty()) {
+            log.debug("Export Plugin - dropping " + PROJECTS.size() + " cached projects");
+        }
+        PROJECTS.clear();
+    }
+
+    private static class CachedProject {
+        private final Project project;
+        private final long loaded;
+
+        CachedProject(Project project, long loaded) {
+            this.project = project;
+            this.loaded = loaded;
+        }
+    }
+}
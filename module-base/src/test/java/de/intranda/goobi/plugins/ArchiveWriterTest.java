@@ -0,0 +1,150 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveWriterTest {
+
+    private static final int BLOCK_SIZE = 512;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTarEntries() throws IOException {
+        Path file = write("content");
+        byte[] archive = writeTar("images/00000001.tif", file);
+
+        // the parent folder is added first
+        assertEquals("images/", getString(archive, 0, 100));
+        assertEquals('5', archive[156]);
+        assertUstarHeader(archive, 0);
+
+        int header = BLOCK_SIZE;
+        assertEquals("images/00000001.tif", getString(archive, header, 100));
+        assertEquals('0', archive[header + 156]);
+        assertEquals(7, Long.parseLong(getString(archive, header + 124, 12).trim(), 8));
+        assertUstarHeader(archive, header);
+        assertEquals("content", new String(archive, header + BLOCK_SIZE, 7, StandardCharsets.UTF_8));
+
+        // the file is padded to a full block, followed by two empty blocks
+        assertEquals(5 * BLOCK_SIZE, archive.length);
+        assertArrayEquals(new byte[2 * BLOCK_SIZE], Arrays.copyOfRange(archive, 3 * BLOCK_SIZE, archive.length));
+    }
+
+    @Test
+    public void testLongNameInPrefix() throws IOException {
+        String parent = repeat('a', 60);
+        String directory = parent + "/" + repeat('b', 60);
+        byte[] archive = writeTar(directory + "/00000001.tif", write("content"));
+
+        int directoryHeader = BLOCK_SIZE;
+        assertEquals(repeat('b', 60) + "/", getString(archive, directoryHeader, 100));
+        assertEquals(parent, getString(archive, directoryHeader + 345, 155));
+        assertEquals('5', archive[directoryHeader + 156]);
+
+        int header = 2 * BLOCK_SIZE;
+        assertEquals("00000001.tif", getString(archive, header, 100));
+        assertEquals(directory, getString(archive, header + 345, 155));
+        assertEquals('0', archive[header + 156]);
+        assertUstarHeader(archive, header);
+    }
+
+    @Test
+    public void testLongNameInPaxHeader() throws IOException {
+        String name = repeat('f', 150) + ".tif";
+        byte[] archive = writeTar(name, write("content"));
+
+        assertEquals('x', archive[156]);
+        assertUstarHeader(archive, 0);
+        int paxLength = (int) Long.parseLong(getString(archive, 124, 12).trim(), 8);
+        String record = new String(archive, BLOCK_SIZE, paxLength, StandardCharsets.UTF_8);
+        assertEquals(record.length() + " path=" + name + "\n", record);
+
+        int header = 2 * BLOCK_SIZE;
+        assertEquals('0', archive[header + 156]);
+        assertEquals(name.substring(name.length() - 99), getString(archive, header, 100));
+        assertUstarHeader(archive, header);
+    }
+
+    @Test
+    public void testZipEntries() throws IOException {
+        Path file = write("content");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArchiveWriter writer = new ArchiveWriter(out, Packaging.ZIP)) {
+            writer.addFile("images/00000001.jpg", file);
+            writer.addFile("ocr/00000001.xml", file);
+            assertEquals(2, writer.getWrittenFiles());
+            assertEquals(14, writer.getWrittenBytes());
+        }
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8)) {
+            assertEquals("images/", in.getNextEntry().getName());
+            ZipEntry image = in.getNextEntry();
+            assertEquals("images/00000001.jpg", image.getName());
+            // already compressed files are stored
+            assertEquals(ZipEntry.STORED, image.getMethod());
+            assertEquals("content", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals("ocr/", in.getNextEntry().getName());
+            ZipEntry text = in.getNextEntry();
+            assertEquals("ocr/00000001.xml", text.getName());
+            assertEquals(ZipEntry.DEFLATED, text.getMethod());
+            assertEquals("content", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            assertNull(in.getNextEntry());
+        }
+    }
+
+    private byte[] writeTar(String name, Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArchiveWriter writer = new ArchiveWriter(out, Packaging.TAR)) {
+            writer.addFile(name, file);
+        }
+        return out.toByteArray();
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(folder.newFile().toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertUstarHeader(byte[] archive, int offset) {
+        assertEquals("ustar", getString(archive, offset + 257, 6));
+        assertEquals("00", new String(archive, offset + 263, 2, StandardCharsets.US_ASCII));
+        long checksum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            // the checksum is computed with spaces in its own field
+            checksum += i >= 148 && i < 156 ? ' ' : archive[offset + i] & 0xff;
+        }
+        // six octal digits, NUL and space
+        assertEquals(checksum, Long.parseLong(new String(archive, offset + 148, 6, StandardCharsets.US_ASCII), 8));
+        assertEquals(0, archive[offset + 154]);
+        assertEquals(' ', archive[offset + 155]);
+    }
+
+    private static String getString(byte[] archive, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && archive[end] != 0) {
+            end++;
+        }
+        return new String(archive, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
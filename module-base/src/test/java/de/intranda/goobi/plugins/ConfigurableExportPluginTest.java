@@ -0,0 +1,21 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class ConfigurableExportPluginTest {
+
+    @Test
+    public void testOcrPathSuffix() {
+        ConfigurableExportPlugin plugin = new ConfigurableExportPlugin();
+        assertEquals("alto", plugin.getOcrPathSuffix(Paths.get("/opt/digiverso/goobi/metadata/1/ocr/1234_alto")));
+        assertEquals("xml", plugin.getOcrPathSuffix(Paths.get("ocr/my_process_title_xml")));
+        assertEquals("txt", plugin.getOcrPathSuffix(Paths.get("1234_txt__")));
+        assertEquals("pdf", plugin.getOcrPathSuffix(Paths.get("pdf")));
+        assertEquals("", plugin.getOcrPathSuffix(Paths.get("___")));
+        assertEquals("alto", plugin.getOcrPathSuffix(Paths.get("1234__alto")));
+    }
+}
@@ -0,0 +1,130 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CopyJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path destination;
+    private Path target;
+    private Path journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("source").toPath().resolve("00000001.tif");
+        Files.write(source, "image data".getBytes(StandardCharsets.UTF_8));
+        destination = folder.newFolder("destination").toPath();
+        target = destination.resolve("images").resolve("00000001.tif");
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target);
+        journalFile = folder.getRoot().toPath().resolve("journal").resolve("copy-journal.tsv");
+    }
+
+    @Test
+    public void testCompletedEntry() throws IOException {
+        String checksum = ChecksumManifest.createChecksum(source, ChecksumManifest.Algorithm.SHA256);
+        record(checksum);
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        CopyJournal.Entry entry = journal.getCompletedEntry(source, target, ChecksumManifest.Algorithm.SHA256);
+        assertNotNull(entry);
+        assertEquals(Files.size(source), entry.getSize());
+        assertEquals(checksum, entry.getChecksum());
+    }
+
+    @Test
+    public void testCorruptedTarget() throws IOException {
+        record(ChecksumManifest.createChecksum(source, ChecksumManifest.Algorithm.SHA256));
+        // same size, different content
+        Files.write(target, "IMAGE DATA".getBytes(StandardCharsets.UTF_8));
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, ChecksumManifest.Algorithm.SHA256));
+    }
+
+    @Test
+    public void testChecksumWithoutAlgorithm() throws IOException {
+        record(ChecksumManifest.createChecksum(source, ChecksumManifest.Algorithm.SHA256));
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testEntryWithoutChecksum() throws IOException {
+        record(null);
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        CopyJournal.Entry entry = journal.getCompletedEntry(source, target, null);
+        assertNotNull(entry);
+        assertNull(entry.getChecksum());
+    }
+
+    @Test
+    public void testNoPreviousAttempt() throws IOException {
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testMissingTarget() throws IOException {
+        record(null);
+        Files.delete(target);
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testIncompleteTarget() throws IOException {
+        record(null);
+        Files.write(target, "image".getBytes(StandardCharsets.UTF_8));
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testChangedSource() throws IOException {
+        record(null);
+        FileTime lastModified = Files.getLastModifiedTime(source);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(lastModified.toMillis() + 60000));
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testIncompleteLastLine() throws IOException {
+        record(null);
+        // the previous attempt was killed while it wrote the next entry
+        Files.write(journalFile, "10\t12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        assertNotNull(journal.getCompletedEntry(source, target, null));
+    }
+
+    @Test
+    public void testFinishDeletesJournal() throws IOException {
+        record(null);
+        CopyJournal journal = CopyJournal.open(destination, journalFile);
+        journal.finish();
+        assertFalse(Files.exists(journalFile));
+    }
+
+    private void record(String checksum) throws IOException {
+        try (CopyJournal journal = CopyJournal.open(destination, journalFile)) {
+            journal.record(source, target, checksum);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExportProfileTest {
+
+    private static final String CONFIG = "<config_plugin><config><project>*</project><includeFolders parallelism=\"1\"/>"
+            + "<target key=\"{meta.DocType}\" value=\"Monograph\" projectName=\"Monographs\"/>"
+            + "<target key=\"{meta.DocType}\" matches=\"Periodical.*\" projectName=\"Periodicals\"/>"
+            + "<target key=\"{meta.Collection}\" in=\"maps, prints\" projectName=\"Collections\"/>"
+            + "<target key=\"{meta.Signature}\" empty=\"true\" projectName=\"\"/>"
+            // malformed: no condition
+            + "<target key=\"{meta.DocType}\" projectName=\"Broken\"/>"
+            + "</config></config_plugin>";
+
+    private ExportProfile profile;
+
+    // key -> number of calls of the resolver
+    private Map<String, Integer> resolvedKeys = new HashMap<>();
+
+    @Before
+    public void setUp() throws ConfigurationException {
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        // like the configuration of the plugin, the list of values must not be split
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.load(new StringReader(CONFIG));
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        profile = ExportProfile.compile(xmlConfig.configurationAt("//config[./project = '*']"));
+    }
+
+    @Test
+    public void testMalformedTargetIsSkipped() {
+        assertTrue(profile.isTargetsMalformed());
+        assertEquals(4, profile.getTargets().size());
+    }
+
+    @Test
+    public void testValue() {
+        assertEquals(List.of("Monographs"), match("Monograph", "manuscripts", "123"));
+    }
+
+    @Test
+    public void testRegularExpression() {
+        assertEquals(List.of("Periodicals"), match("PeriodicalVolume", "manuscripts", "123"));
+        // the whole value has to match
+        assertEquals(List.of(), match("Volume of a Periodical", "manuscripts", "123"));
+    }
+
+    @Test
+    public void testValueList() {
+        assertEquals(List.of("Collections"), match("Manuscript", " prints ", "123"));
+    }
+
+    @Test
+    public void testEmptyValue() {
+        assertEquals(List.of(""), match("Manuscript", "manuscripts", " "));
+        assertEquals(List.of("Monographs", "Collections", ""), match("Monograph", "maps", null));
+    }
+
+    @Test
+    public void testEveryKeyIsResolvedOnce() {
+        match("Monograph", "maps", "123");
+        assertEquals(3, resolvedKeys.size());
+        for (Integer calls : resolvedKeys.values()) {
+            assertEquals(Integer.valueOf(1), calls);
+        }
+    }
+
+    private List<String> match(String docType, String collection, String signature) {
+        Map<String, String> values = new HashMap<>();
+        values.put("{meta.DocType}", docType);
+        values.put("{meta.Collection}", collection);
+        values.put("{meta.Signature}", signature);
+        List<String> projects = new ArrayList<>();
+        for (ExportProfile.TargetRule rule : profile.matchTargets(key -> {
+            resolvedKeys.merge(key, 1, Integer::sum);
+            return values.get(key);
+        })) {
+            projects.add(rule.getProjectName());
+        }
+        return projects;
+    }
+}
@@ -0,0 +1,235 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FolderCopierTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path destination;
+
+    @Before
+    public void setUp() throws IOException {
+        source = folder.newFolder("images").toPath();
+        write(source.resolve("00000001.tif"), "first image");
+        Files.createDirectories(source.resolve("thumbs"));
+        write(source.resolve("thumbs").resolve("00000001.jpg"), "first thumbnail");
+        destination = folder.getRoot().toPath().resolve("export");
+    }
+
+    @Test
+    public void testCopyDirectory() throws Exception {
+        Path target = destination.resolve("images");
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.copyDirectory(source, target);
+            assertEquals(2, copier.getPlannedFiles());
+            assertTrue(copier.execute().isEmpty());
+            assertEquals(2, copier.getWrittenFiles());
+        }
+        assertEquals("first image", read(target.resolve("00000001.tif")));
+        assertEquals("first thumbnail", read(target.resolve("thumbs").resolve("00000001.jpg")));
+    }
+
+    @Test
+    public void testParallelCopy() throws Exception {
+        Files.createDirectories(source.resolve("empty"));
+        try (FolderCopier copier = new FolderCopier(4, LinkMode.COPY)) {
+            copier.copyDirectory(source, destination);
+            assertTrue(copier.execute().isEmpty());
+            assertEquals(2, copier.getWrittenFiles());
+        }
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+        assertEquals("first thumbnail", read(destination.resolve("thumbs").resolve("00000001.jpg")));
+        assertTrue(Files.isDirectory(destination.resolve("empty")));
+    }
+
+    @Test
+    public void testParallelFailuresAreCollected() throws Exception {
+        Files.createDirectories(destination);
+        try (FolderCopier copier = new FolderCopier(4, LinkMode.COPY)) {
+            copier.copyFile(source.resolve("missing.tif"), destination.resolve("missing.tif"));
+            copier.copyFile(source.resolve("00000001.tif"), destination.resolve("00000001.tif"));
+            assertEquals(1, copier.execute().size());
+        }
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testFailuresAreCollected() throws Exception {
+        Files.createDirectories(destination);
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.copyFile(source.resolve("missing.tif"), destination.resolve("missing.tif"));
+            copier.copyFile(source.resolve("00000001.tif"), destination.resolve("00000001.tif"));
+            assertEquals(1, copier.execute().size());
+        }
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testHiddenFilesAreSkipped() throws Exception {
+        write(source.resolve(".hidden"), "hidden file");
+        Files.createDirectories(source.resolve(".cache"));
+        write(source.resolve(".cache").resolve("00000001.tif"), "cached image");
+        // the StorageProvider plans the folder with a parallelism of 1, the file tree is walked with a higher parallelism
+        for (int parallelism : new int[] { 1, 4 }) {
+            Path target = destination.resolve("images" + parallelism);
+            try (FolderCopier copier = new FolderCopier(parallelism, LinkMode.COPY)) {
+                copier.copyDirectory(source, target);
+                assertEquals(2, copier.getPlannedFiles());
+                assertTrue(copier.execute().isEmpty());
+            }
+            assertTrue(Files.notExists(target.resolve(".hidden")));
+            assertTrue(Files.notExists(target.resolve(".cache")));
+        }
+    }
+
+    @Test
+    public void testSourceIsReadOnceForAllTargets() throws Exception {
+        Path otherDestination = folder.getRoot().toPath().resolve("other");
+        Files.createDirectories(destination);
+        Files.createDirectories(otherDestination);
+        Path file = source.resolve("00000001.tif");
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.copyFile(file, destination.resolve("00000001.tif"));
+            copier.copyFile(file, otherDestination.resolve("00000001.tif"));
+            assertEquals(1, copier.getPlannedFiles());
+            assertTrue(copier.execute().isEmpty());
+            assertEquals(2, copier.getWrittenFiles());
+            assertEquals(1, copier.getWrittenFiles(destination));
+            assertEquals(1, copier.getWrittenFiles(otherDestination));
+        }
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+        assertEquals("first image", read(otherDestination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testIncrementalExportSkipsUnchangedFiles() throws Exception {
+        assertEquals(2, exportIncrementally(false));
+        assertTrue(Files.isRegularFile(destination.resolve(ExportManifest.MANIFEST_FILE_NAME)));
+
+        // an unchanged file is not written again
+        write(destination.resolve("00000001.tif"), "FIRST IMAGE");
+        assertEquals(0, exportIncrementally(false));
+        assertEquals("FIRST IMAGE", read(destination.resolve("00000001.tif")));
+
+        write(source.resolve("00000001.tif"), "changed image");
+        assertEquals(1, exportIncrementally(false));
+        assertEquals("changed image", read(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testIncrementalExportCopiesMissingTargets() throws Exception {
+        exportIncrementally(false);
+        Files.delete(destination.resolve("00000001.tif"));
+        assertEquals(1, exportIncrementally(false));
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testIncrementalExportDeletesRemovedFiles() throws Exception {
+        exportIncrementally(true);
+        Files.delete(source.resolve("thumbs").resolve("00000001.jpg"));
+        exportIncrementally(true);
+        assertTrue(Files.notExists(destination.resolve("thumbs").resolve("00000001.jpg")));
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testIncrementalExportKeepsFilesOfUnplannedFolders() throws Exception {
+        Path ocr = folder.newFolder("ocr").toPath();
+        write(ocr.resolve("00000001.xml"), "first text");
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addManifest(ExportManifest.load(destination, false, true));
+            copier.copyDirectory(source, destination);
+            copier.copyDirectory(ocr, destination.resolve("ocr"));
+            assertTrue(copier.execute().isEmpty());
+        }
+
+        // the ocr folder is not exported anymore, but its source still exists
+        exportIncrementally(true);
+        assertEquals("first text", read(destination.resolve("ocr").resolve("00000001.xml")));
+
+        // files whose source still exists are kept even if they are not planned
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addManifest(ExportManifest.load(destination, false, true));
+            copier.copyFile(source.resolve("00000001.tif"), destination.resolve("00000001.tif"));
+            assertTrue(copier.execute().isEmpty());
+        }
+        assertEquals("first thumbnail", read(destination.resolve("thumbs").resolve("00000001.jpg")));
+    }
+
+    @Test
+    public void testResumeSkipsCompletedFiles() throws Exception {
+        Path journalFile = folder.getRoot().toPath().resolve("journal.tsv");
+        // the first attempt was cancelled after the first file
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addJournal(CopyJournal.open(destination, journalFile));
+            copier.createDirectory(destination);
+            copier.copyFile(source.resolve("00000001.tif"), destination.resolve("00000001.tif"));
+            assertTrue(copier.execute().isEmpty());
+        }
+        // a completed file is not written again
+        write(destination.resolve("00000001.tif"), "FIRST IMAGE");
+
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            CopyJournal journal = CopyJournal.open(destination, journalFile);
+            copier.addJournal(journal);
+            copier.copyDirectory(source, destination);
+            assertTrue(copier.execute().isEmpty());
+            assertEquals(1, copier.getWrittenFiles());
+            journal.finish();
+        }
+        assertEquals("FIRST IMAGE", read(destination.resolve("00000001.tif")));
+        assertEquals("first thumbnail", read(destination.resolve("thumbs").resolve("00000001.jpg")));
+        assertTrue(Files.notExists(journalFile));
+    }
+
+    @Test
+    public void testResumeCopiesIncompleteFiles() throws Exception {
+        Path journalFile = folder.getRoot().toPath().resolve("journal.tsv");
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addJournal(CopyJournal.open(destination, journalFile));
+            copier.copyDirectory(source, destination);
+            assertTrue(copier.execute().isEmpty());
+        }
+        write(destination.resolve("00000001.tif"), "first");
+
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addJournal(CopyJournal.open(destination, journalFile));
+            copier.copyDirectory(source, destination);
+            assertTrue(copier.execute().isEmpty());
+            assertEquals(1, copier.getWrittenFiles());
+        }
+        assertEquals("first image", read(destination.resolve("00000001.tif")));
+    }
+
+    private int exportIncrementally(boolean deleteRemovedFiles) throws IOException, InterruptedException {
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            copier.addManifest(ExportManifest.load(destination, false, deleteRemovedFiles));
+            copier.copyDirectory(source, destination);
+            assertTrue(copier.execute().isEmpty());
+            return copier.getWrittenFiles();
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
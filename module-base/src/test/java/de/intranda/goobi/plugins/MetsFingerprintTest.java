@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetsFingerprintTest {
+
+    private static final String METS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\">\n"
+            + "  <mets:metsHdr CREATEDATE=\"%s\" LASTMODDATE=\"%s\">\n"
+            + "    <mets:agent OTHERTYPE=\"SOFTWARE\" ROLE=\"CREATOR\" TYPE=\"OTHER\"><mets:name>Goobi</mets:name></mets:agent>\n"
+            + "  </mets:metsHdr>\n"
+            + "  <mets:fileSec><mets:fileGrp USE=\"%s\"/></mets:fileSec>\n"
+            + "</mets:mets>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHeaderTimestampsAreIgnored() throws IOException {
+        Path first = write("first.xml", String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION"));
+        Path second = write("second.xml", String.format(METS, "2025-06-30T08:15:00", "2025-06-30T08:15:01", "PRESENTATION"));
+        assertEquals(MetsFingerprint.create(first), MetsFingerprint.create(second));
+        assertTrue(MetsFingerprint.isUnchanged(second, first));
+    }
+
+    @Test
+    public void testFormattingIsIgnored() throws IOException {
+        String mets = String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION");
+        Path first = write("first.xml", mets);
+        Path second = write("second.xml", mets.replace("\n  ", "\n\t\t"));
+        assertTrue(MetsFingerprint.isUnchanged(second, first));
+    }
+
+    @Test
+    public void testChangedContent() throws IOException {
+        Path first = write("first.xml", String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION"));
+        Path second = write("second.xml", String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "LOCAL"));
+        assertNotEquals(MetsFingerprint.create(first), MetsFingerprint.create(second));
+        assertFalse(MetsFingerprint.isUnchanged(second, first));
+    }
+
+    @Test
+    public void testTimestampsOutsideOfTheHeader() throws IOException {
+        String mets = String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION");
+        Path first = write("first.xml", mets.replace("<mets:fileGrp ", "<mets:fileGrp CREATEDATE=\"2024-01-01\" "));
+        Path second = write("second.xml", mets.replace("<mets:fileGrp ", "<mets:fileGrp CREATEDATE=\"2025-01-01\" "));
+        assertFalse(MetsFingerprint.isUnchanged(second, first));
+    }
+
+    @Test
+    public void testMissingExistingFile() throws IOException {
+        Path file = write("file.xml", String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION"));
+        assertFalse(MetsFingerprint.isUnchanged(file, folder.getRoot().toPath().resolve("missing.xml")));
+    }
+
+    @Test
+    public void testBrokenExistingFile() throws IOException {
+        Path file = write("file.xml", String.format(METS, "2024-01-01T10:00:00", "2024-01-01T10:00:00", "PRESENTATION"));
+        Path broken = write("broken.xml", "<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\"><mets:metsHdr");
+        assertFalse(MetsFingerprint.isUnchanged(file, broken));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
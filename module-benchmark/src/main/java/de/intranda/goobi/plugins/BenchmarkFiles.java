@@ -0,0 +1,143 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Synthetic files for the benchmarks. Everything is created inside of a local temporary folder, which stands in for the storage of Goobi.
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+        // static access only
+    }
+
+    /**
+     * copy the example plugin configuration into a folder
+     *
+     * @param folder Path of the folder
+     * @return Path of the copied configuration file
+     * @throws IOException
+     */
+    static Path copyPluginConfig(Path folder) throws IOException {
+        Path configFile = folder.resolve("plugin_intranda_export_configurable.xml");
+        try (InputStream in = BenchmarkFiles.class.getResourceAsStream("/plugin_intranda_export_configurable.xml")) {
+            Files.copy(in, configFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return configFile;
+    }
+
+    /**
+     * create files with random content
+     *
+     * @param folder Path of the folder, it is created if it does not exist
+     * @param count number of files
+     * @param size size of each file in bytes
+     * @param extension file extension, e.g. tif
+     * @throws IOException
+     */
+    static void createFiles(Path folder, int count, int size, String extension) throws IOException {
+        Files.createDirectories(folder);
+        Random random = new Random(count);
+        byte[] content = new byte[size];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(content);
+            Files.write(folder.resolve(getFileName(i, extension)), content);
+        }
+    }
+
+    /**
+     * get the name of a synthetic image, the names contain the keywords of the example destinationFolder rules
+     *
+     * @param index number of the file
+     * @param extension file extension, e.g. tif
+     * @return the file name
+     */
+    static String getFileName(int index, String extension) {
+        String[] keywords = { "Exterior", "Interior", "Survey Form", "Detail" };
+        return String.format("%08d_%s.%s", index, keywords[index % keywords.length], extension);
+    }
+
+    /**
+     * write a METS file with one page per image
+     *
+     * @param metsFile Path of the METS file
+     * @param pages number of pages
+     * @throws IOException
+     */
+    static void writeMetsFile(Path metsFile, int pages) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(metsFile, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+                    + " xmlns:mods=\"http://www.loc.gov/mods/v3\">\n");
+            writer.write("<mets:metsHdr CREATEDATE=\"2024-01-01T00:00:00\"/>\n");
+            writer.write("<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods>"
+                    + "<mods:titleInfo><mods:title>Benchmark</mods:title></mods:titleInfo></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            writer.write("<mets:fileSec><mets:fileGrp USE=\"PRESENTATION\">\n");
+            for (int i = 0; i < pages; i++) {
+                writer.write("<mets:file ID=\"FILE_" + i + "\" MIMETYPE=\"image/tiff\"><mets:FLocat LOCTYPE=\"URL\" xlink:href=\"file:///images/"
+                        + getFileName(i, "tif") + "\"/></mets:file>\n");
+            }
+            writer.write("</mets:fileGrp></mets:fileSec>\n");
+            writer.write("<mets:structMap TYPE=\"PHYSICAL\"><mets:div ID=\"PHYS_0000\" TYPE=\"physSequence\">\n");
+            for (int i = 0; i < pages; i++) {
+                writer.write("<mets:div ID=\"PHYS_" + i + "\" ORDER=\"" + (i + 1) + "\" TYPE=\"page\"><mets:fptr FILEID=\"FILE_" + i
+                        + "\"/></mets:div>\n");
+            }
+            writer.write("</mets:div></mets:structMap>\n");
+            writer.write("</mets:mets>\n");
+        }
+    }
+
+    /**
+     * write a MARC record with some data fields
+     *
+     * @param marcFile Path of the MARC file
+     * @throws IOException
+     */
+    static void writeMarcFile(Path marcFile) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<record xmlns=\"http://www.loc.gov/MARC21/slim\">\n");
+        sb.append("<leader>00000nam a2200000 c 4500</leader>\n");
+        for (int i = 0; i < 50; i++) {
+            sb.append("<datafield tag=\"5").append(String.format("%02d", i)).append("\" ind1=\" \" ind2=\" \">");
+            sb.append("<subfield code=\"a\">Note ").append(i).append("</subfield></datafield>\n");
+        }
+        sb.append("</record>\n");
+        Files.writeString(marcFile, sb.toString());
+    }
+
+    /**
+     * delete a folder including its content
+     *
+     * @param folder Path of the folder
+     * @throws IOException
+     */
+    static void delete(Path folder) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution of the &lt;config&gt; block of a project: the XPath lookup with the fallback to the default block, compiling it into an
+ * ExportProfile, and the cached lookup that is used by every export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigBenchmark {
+
+    // a project with its own block, and one that falls back to the default block
+    @Param({ "Manuscript_Project", "unknown" })
+    public String projectName;
+
+    private Path folder;
+    private Path configFile;
+    private XMLConfiguration xmlConfig;
+
+    @Setup
+    public void setup() throws IOException, ConfigurationException {
+        folder = Files.createTempDirectory("export-benchmark-");
+        configFile = BenchmarkFiles.copyPluginConfig(folder);
+        xmlConfig = new XMLConfiguration(configFile.toFile());
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        ExportProfileCache.invalidate();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public SubnodeConfiguration resolveConfig() {
+        return getConfig(projectName);
+    }
+
+    @Benchmark
+    public ExportProfile resolveAndCompileProfile() {
+        return ExportProfile.compile(getConfig(projectName));
+    }
+
+    @Benchmark
+    public ExportProfile cachedProfile() {
+        return ExportProfileCache.getProfile(configFile, projectName, name -> ExportProfile.compile(getConfig(name)));
+    }
+
+    // the same lookup as ConfigurableExportPlugin.getConfig, without reading the file through ConfigPlugins
+    private SubnodeConfiguration getConfig(String name) {
+        try {
+            return xmlConfig.configurationAt("//config[./project = '" + name + "']");
+        } catch (IllegalArgumentException e) {
+            return xmlConfig.configurationAt("//config[./project = '*']");
+        }
+    }
+}
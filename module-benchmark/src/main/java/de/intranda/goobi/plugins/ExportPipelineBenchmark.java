@@ -0,0 +1,131 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end export of a synthetic process into a local temporary folder: the media folder is routed by a destinationFolder rule, the master
+ * folder is copied as a whole, checksums are recorded if requested, and the METS file is published with embedded MARC records. The process
+ * folder and the destination are both located on the local disk, the StorageProvider works on them like on any NIO storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExportPipelineBenchmark {
+
+    @Param({ "1000" })
+    public int files;
+
+    @Param({ "16", "1024" })
+    public int fileSizeKb;
+
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    // copy: plain copies, checksum: copies with a sha256 manifest, zip: a single ZIP package
+    @Param({ "copy", "checksum", "zip" })
+    public String mode;
+
+    private Path folder;
+    private Path processFolder;
+    private Path destination;
+    private Path metsFile;
+    private Path marcFile;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("export-benchmark-");
+        processFolder = folder.resolve("process");
+        BenchmarkFiles.createFiles(processFolder.resolve("images/process_media"), files, fileSizeKb * 1024, "jpg");
+        BenchmarkFiles.createFiles(processFolder.resolve("images/master_process_media"), files, fileSizeKb * 1024, "tif");
+        metsFile = processFolder.resolve("meta.xml");
+        BenchmarkFiles.writeMetsFile(metsFile, files);
+        marcFile = processFolder.resolve("import/process_marc.xml");
+        Files.createDirectories(marcFile.getParent());
+        BenchmarkFiles.writeMarcFile(marcFile);
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanDestination() throws IOException {
+        destination = folder.resolve("destination");
+        BenchmarkFiles.delete(destination);
+        Files.createDirectories(destination);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public long export() throws IOException, InterruptedException, XMLStreamException {
+        Path exportFolder = destination.resolve("process");
+        FileTransfer transfer = new FileTransfer(true, 64, false, FileTransfer.SyncMode.NONE, 0);
+        try (FolderCopier copier = new FolderCopier(parallelism, LinkMode.COPY, transfer)) {
+            List<Path> media;
+            try (Stream<Path> stream = Files.list(processFolder.resolve("images/process_media"))) {
+                media = stream.sorted().collect(Collectors.toList());
+            }
+            ConfigurableExportPlugin.routeFiles(media, Collections.singletonList(Pattern.compile(".*")),
+                    Arrays.asList(exportFolder.resolve("images")), LinkMode.COPY, copier);
+            copier.createDirectory(exportFolder.resolve("images"));
+            copier.copyDirectory(processFolder.resolve("images/master_process_media"), exportFolder.resolve("master"));
+
+            if ("zip".equals(mode)) {
+                Path staged = folder.resolve("process.xml");
+                MarcEmbedder.embed(metsFile, staged, marcFile, null);
+                try (OutputStream out = Files.newOutputStream(destination.resolve("process.zip"));
+                        ArchiveWriter archive = new ArchiveWriter(out, Packaging.ZIP)) {
+                    archive.addFile("process.xml", staged);
+                    copier.writeTo(archive, exportFolder);
+                    return archive.getWrittenBytes();
+                }
+            }
+
+            ChecksumManifest manifest = null;
+            if ("checksum".equals(mode)) {
+                manifest = ChecksumManifest.load(exportFolder, ChecksumManifest.Algorithm.SHA256);
+                copier.addChecksumManifest(manifest, false);
+            }
+            List<String> problems = copier.execute();
+            if (!problems.isEmpty()) {
+                throw new IOException(problems.get(0));
+            }
+            Path exportedMetsFile = exportFolder.resolve("process.xml");
+            MarcEmbedder.embed(metsFile, exportedMetsFile, marcFile, null);
+            if (manifest != null) {
+                manifest.put(exportedMetsFile, ChecksumManifest.createChecksum(exportedMetsFile, manifest.getAlgorithm()));
+                manifest.write();
+            }
+            return copier.getCopiedBytes();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Embedding the MARC records into METS files of growing size, once in memory and once from file to file as done by the export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarcEmbedderBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int pages;
+
+    private Path folder;
+    private Path metsFile;
+    private Path exportedFile;
+    private Path sourceMarcFile;
+    private Path digitalMarcFile;
+    private byte[] mets;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("export-benchmark-");
+        metsFile = folder.resolve("process.xml");
+        exportedFile = folder.resolve("exported.xml");
+        sourceMarcFile = folder.resolve("process_marc.xml");
+        digitalMarcFile = folder.resolve("process_digital_marc.xml");
+        BenchmarkFiles.writeMetsFile(metsFile, pages);
+        BenchmarkFiles.writeMarcFile(sourceMarcFile);
+        BenchmarkFiles.writeMarcFile(digitalMarcFile);
+        mets = Files.readAllBytes(metsFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public void embedInMemory() throws IOException, XMLStreamException {
+        MarcEmbedder.embed(new ByteArrayInputStream(mets), OutputStream.nullOutputStream(), sourceMarcFile, digitalMarcFile);
+    }
+
+    @Benchmark
+    public void embedIntoFile() throws IOException, XMLStreamException {
+        MarcEmbedder.embed(metsFile, exportedFile, sourceMarcFile, digitalMarcFile);
+    }
+}
@@ -0,0 +1,91 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Planning the copy of the ocr folder: listing its sub folders, filtering them by their suffix, and adding the matching folders with all of
+ * their files to the copy plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OcrBenchmark {
+
+    private static final String[] SUFFIXES = { "alto", "txt", "xml", "pdf", "hocr", "json" };
+
+    @Param({ "100", "1000" })
+    public int filesPerFolder;
+
+    // configured sourceFolderSuffix elements, empty exports all folders
+    @Param({ "", "alto,txt" })
+    public String suffixes;
+
+    private Path folder;
+    private Path ocrFolder;
+    private Path destination;
+    private Set<String> ocrSuffixes;
+    private ConfigurableExportPlugin plugin;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("export-benchmark-");
+        ocrFolder = folder.resolve("ocr");
+        destination = folder.resolve("destination");
+        for (String suffix : SUFFIXES) {
+            BenchmarkFiles.createFiles(ocrFolder.resolve("process_" + suffix), filesPerFolder, 0, suffix);
+        }
+        ocrSuffixes = new HashSet<>();
+        for (String suffix : suffixes.split(",")) {
+            if (!suffix.isBlank()) {
+                ocrSuffixes.add(suffix);
+            }
+        }
+        plugin = new ConfigurableExportPlugin();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public int filterAndPlan() throws IOException {
+        List<Path> ocrData;
+        try (Stream<Path> stream = Files.list(ocrFolder)) {
+            ocrData = stream.collect(Collectors.toList());
+        }
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            for (Path path : ocrData) {
+                String suffix = plugin.getOcrPathSuffix(path);
+                if (ocrSuffixes.isEmpty() || ocrSuffixes.contains(suffix)) {
+                    copier.copyDirectory(path, destination.resolve(path.getFileName().toString()));
+                }
+            }
+            return copier.getPlannedFiles();
+        }
+    }
+}
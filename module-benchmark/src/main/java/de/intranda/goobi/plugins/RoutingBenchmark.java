@@ -0,0 +1,92 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routing of the files of a folder into the &lt;destinationFolder&gt; elements: listing the folder and matching every file name against all
+ * patterns, the matches are added to the copy plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int files;
+
+    private Path folder;
+    private Path sourceFolder;
+    private List<Path> listedFiles;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Path> toPaths = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("export-benchmark-");
+        sourceFolder = folder.resolve("images");
+        BenchmarkFiles.createFiles(sourceFolder, files, 0, "tif");
+        listedFiles = listFiles();
+        // the rules of the example configuration
+        for (String[] rule : Arrays.asList(new String[] { "Survey Forms", ".*Survey Form.*" },
+                new String[] { "Images/PLINExterior", ".*Exterior.*" }, new String[] { "Files_ending_with_1/files", ".*1\\..*" })) {
+            toPaths.add(folder.resolve("destination").resolve(rule[0]));
+            patterns.add(Pattern.compile(rule[1]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public int listFolder() throws IOException {
+        return listFiles().size();
+    }
+
+    @Benchmark
+    public int route() {
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            return ConfigurableExportPlugin.routeFiles(listedFiles, patterns, toPaths, LinkMode.COPY, copier);
+        }
+    }
+
+    @Benchmark
+    public int listAndRoute() throws IOException {
+        try (FolderCopier copier = new FolderCopier(1, LinkMode.COPY)) {
+            return ConfigurableExportPlugin.routeFiles(listFiles(), patterns, toPaths, LinkMode.COPY, copier);
+        }
+    }
+
+    // stands in for StorageProvider.listFiles, which lists the folder in the same way on local storage
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(sourceFolder)) {
+            return stream.sorted().collect(Collectors.toList());
+        }
+    }
+}